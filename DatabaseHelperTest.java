@@ -1,7 +1,16 @@
 import org.junit.jupiter.api.*;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import application.*;
+import databasePart1.AsyncDatabaseHelper;
+import databasePart1.ConnectionPool;
+import databasePart1.CorpusTransfer;
 import databasePart1.DatabaseHelper;
+import databasePart1.DbMetrics;
+import databasePart1.PooledConnection;
+import databasePart1.SearchIndex;
+import databasePart1.StorageProfile;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,30 +25,28 @@ public class DatabaseHelperTest {
     private Connection connection;
     
     /**
-     * Sets up the test environment by connecting to the database.
+     * Sets up the test environment by connecting to a fresh in-memory database of its own.
      * 
      * @throws SQLException if a database access error occurs.
      */
     @BeforeEach
     
     public void setUp() throws SQLException {
-        dbHelper = new DatabaseHelper();
+        dbHelper = new DatabaseHelper(StorageProfile.memory());
         dbHelper.connectToDatabase();
-        connection = DriverManager.getConnection("jdbc:h2:~/HW2Database", "sa", "");
+        connection = DriverManager.getConnection(dbHelper.getStorage().getUrl(), "sa", "");
     }
 
     /**
-     * Cleans up after each test by closing the database connection.
+     * Cleans up after each test by closing the database connections, which drops the database.
      * 
      * @throws SQLException if a database access error occurs.
      */
     @AfterEach
     
     public void tearDown() throws SQLException {
+        connection.close();
         dbHelper.closeConnection();
-        Statement stmt = connection.createStatement();
-        stmt.execute("DROP ALL OBJECTS;");
-        stmt.close();
     }
 
     /**
@@ -150,7 +157,8 @@ public class DatabaseHelperTest {
     }
 
     /**
-     * Tests the deleteQuestion method by deleting a question from the database.
+     * Tests the deleteQuestion method by deleting a question, which hides it from every listing
+     * until the compactor archives it along with its answers.
      * 
      * @throws SQLException if an error occurs during the database interaction.
      */
@@ -158,6 +166,9 @@ public class DatabaseHelperTest {
     public void testDeleteQuestion() throws SQLException {
         Question question = new Question("Test Question", "Test Body", "TestUser");
         dbHelper.postQuestion(question);
+        Question kept = new Question("Kept Question", "Test Body", "TestUser");
+        dbHelper.postQuestion(kept);
+        dbHelper.postAnswer(new Answer("Test Answer", "AnswerUser", question.getId()));
         String query = "SELECT id FROM questions WHERE title = ?";
         int questionId = -1;
         try (PreparedStatement pstmt = connection.prepareStatement(query)) {
@@ -168,11 +179,943 @@ public class DatabaseHelperTest {
             }
         }
         dbHelper.deleteQuestion(questionId);
-        String deleteQuery = "SELECT * FROM questions WHERE id = ?";
+        String deleteQuery = "SELECT deleted FROM questions WHERE id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(deleteQuery)) {
             pstmt.setInt(1, questionId);
             ResultSet rs = pstmt.executeQuery();
-            assertTrue(rs.next(), "The question should be deleted.");
+            assertTrue(rs.next(), "The question should be kept as a tombstone until compaction.");
+            assertEquals(1, rs.getInt("deleted"), "The question should be marked as deleted.");
         }
+
+        List<Question> all = dbHelper.listAllQuestions().getQuestions();
+        assertEquals(1, all.size());
+        assertEquals(kept.getId(), all.get(0).getId());
+        List<Question> firstPage = dbHelper.listQuestionsAfter(0, 10).getQuestions();
+        assertEquals(1, firstPage.size());
+        assertEquals(kept.getId(), firstPage.get(0).getId());
+        assertTrue(dbHelper.listQuestionsBefore(kept.getId() + 1, 10).getQuestions().stream()
+                .noneMatch(q -> q.getId() == question.getId()));
+        List<Question> found = dbHelper.searchQuestions("Question").getQuestions();
+        assertEquals(1, found.size());
+        assertEquals(kept.getId(), found.get(0).getId());
+
+        assertEquals(1, dbHelper.compactTombstones());
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT (SELECT COUNT(*) FROM questions WHERE id = " + questionId
+                        + "), (SELECT title FROM questions_archive WHERE id = " + questionId
+                        + "), (SELECT COUNT(*) FROM answers_archive WHERE underQuestion = " + questionId + ")")) {
+            rs.next();
+            assertEquals(0, rs.getInt(1), "The question should be removed by compaction.");
+            assertEquals("Test Question", rs.getString(2), "The question should be archived.");
+            assertEquals(1, rs.getInt(3), "The question's answers should be archived with it.");
+        }
+    }
+
+    /**
+     * Tests that repeated calls reuse the cached prepared statement instead of preparing it again.
+     * 
+     * @throws SQLException if an error occurs during the database interaction.
+     */
+    @Test
+    public void testStatementCacheReusesStatements() throws SQLException {
+        dbHelper.postQuestion(new Question("Title1", "Body1", "User1"));
+        dbHelper.listAllQuestions();
+        long hitsBefore = dbHelper.getStatementCacheStats().getHits();
+        dbHelper.listAllQuestions();
+        assertTrue(dbHelper.getStatementCacheStats().getHits() > hitsBefore);
+    }
+
+    /**
+     * Tests that operations preparing more statements than the cache holds still run, since a
+     * statement evicted while its borrower holds it is not closed until the connection is returned.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testStatementCacheEvictionDuringOperation() throws Exception {
+        DatabaseHelper small = new DatabaseHelper(StorageProfile.memory());
+        small.configureStatementCache(1);
+        small.connectToDatabase();
+        try {
+            Question question = new Question("Evict", "Body", "User1");
+            small.postQuestion(question).get();
+            List<Answer> answers = new ArrayList<Answer>();
+            for (int i = 0; i < 3; i++) {
+                answers.add(new Answer("Answer" + i, "User1", question.getId()));
+            }
+            small.postAnswers(answers);
+
+            assertTrue(small.deleteAnswer(answers.get(0).getId()).get());
+            assertTrue(small.markAnswerAsSolution(answers.get(1).getId()).get());
+            assertEquals(DatabaseHelper.ResolveResult.RESOLVED,
+                    small.resolveWithSolution(question.getId(), answers.get(2).getId()).get());
+            QuestionThread thread = small.loadThread(question.getId());
+            assertEquals(2, thread.getQuestion().getSolutionCount());
+            assertTrue(small.getStatementCacheStats().getEvictions() > 0);
+            assertEquals(small.getStatementCacheStats().getEvictions(), small.getStatementCacheStats().getClosed());
+        } finally {
+            small.closeConnection();
+        }
+    }
+
+    /**
+     * Tests the keyset pagination methods by paging forward and back through posted questions.
+     * 
+     * @throws SQLException if an error occurs during the database interaction.
+     */
+    @Test
+    public void testQuestionPagination() throws SQLException {
+        for (int i = 1; i <= 5; i++) {
+            dbHelper.postQuestion(new Question("Title" + i, "Body" + i, "User1"));
+        }
+        QuestionList first = dbHelper.listQuestionsAfter(0, 2);
+        assertEquals(2, first.getQuestions().size());
+        assertFalse(first.hasPreviousPage());
+        assertTrue(first.hasNextPage());
+
+        QuestionList last = dbHelper.listQuestionsAfter(dbHelper.listQuestionsAfter(first.getLastId(), 2).getLastId(), 2);
+        assertEquals(1, last.getQuestions().size());
+        assertFalse(last.hasNextPage());
+
+        QuestionList back = dbHelper.listQuestionsBefore(last.getFirstId(), 2);
+        assertEquals(2, back.getQuestions().size());
+        assertTrue(back.hasPreviousPage());
+        assertTrue(back.hasNextPage());
+        assertEquals("Title3", back.getQuestions().get(0).getTitle());
+    }
+
+    /**
+     * Tests searchQuestions by matching terms case-insensitively across titles, bodies and answers,
+     * with AND, OR and prefix queries, and after an update and a delete.
+     * 
+     * @throws SQLException if an error occurs during the database interaction.
+     */
+    @Test
+    public void testSearchQuestions() throws SQLException {
+        Question q1 = new Question("Database joins", "How do I write an inner join?", "User1");
+        Question q2 = new Question("Java streams", "What is a collector?", "User2");
+        dbHelper.postQuestion(q1);
+        dbHelper.postQuestion(q2);
+        dbHelper.postAnswer(new Answer("Use Collectors.toList()", "User1", q2.getId()));
+
+        assertEquals(1, dbHelper.searchQuestions("JOIN inner").getQuestions().size());
+        assertEquals(2, dbHelper.searchQuestions("join OR collectors").getQuestions().size());
+        assertEquals(1, dbHelper.searchQuestions("collect*").getQuestions().size());
+        assertEquals(0, dbHelper.searchQuestions("posted").getQuestions().size());
+
+        dbHelper.updateQuestion(q1.getId(), "SQL joins", "Outer join?");
+        assertEquals(0, dbHelper.searchQuestions("inner").getQuestions().size());
+        dbHelper.deleteQuestion(q2.getId());
+        assertEquals(0, dbHelper.searchQuestions("collectors").getQuestions().size());
+    }
+
+    /**
+     * Tests that ranked search returns at most K results and puts title matches first.
+     * 
+     * @throws SQLException if an error occurs during the database interaction.
+     */
+    @Test
+    public void testRankedSearchQuestions() throws SQLException {
+        dbHelper.postQuestion(new Question("Homework help", "A question about recursion", "User1"));
+        dbHelper.postQuestion(new Question("Recursion base case", "Why does it overflow?", "User2"));
+        dbHelper.postQuestion(new Question("Loops", "Can recursion replace loops?", "User3"));
+
+        QuestionList results = dbHelper.searchQuestions("recursion", 2);
+        assertEquals(2, results.getQuestions().size());
+        assertEquals("Recursion base case", results.getQuestions().get(0).getTitle());
+    }
+
+    /**
+     * Tests postQuestions and postAnswers by inserting several batches and linking answers
+     * to the generated question ids.
+     * 
+     * @throws SQLException if an error occurs during the database interaction.
+     */
+    @Test
+    public void testBatchPostQuestionsAndAnswers() throws SQLException {
+        dbHelper.configureBatchSize(2);
+        List<Question> questions = new ArrayList<Question>();
+        for (int i = 1; i <= 5; i++) {
+            questions.add(new Question("Title" + i, "Body" + i, "User1"));
+        }
+        int[] questionIds = dbHelper.postQuestions(questions);
+        assertEquals(5, questionIds.length);
+        assertEquals(questionIds[2], questions.get(2).getId());
+
+        List<Answer> answers = new ArrayList<Answer>();
+        for (int id : questionIds) {
+            answers.add(new Answer("Answer to " + id, "User2", id));
+        }
+        int[] answerIds = dbHelper.postAnswers(answers);
+        assertEquals(5, answerIds.length);
+        assertEquals(5, dbHelper.listAllQuestions().getQuestions().size());
+        assertEquals(1, dbHelper.viewAnswersToQuestion(questionIds[4]).getAnswers().size());
+    }
+
+    /**
+     * Tests that repeated views of an answer thread are served from the cache and that
+     * posting, updating and marking an answer invalidate it.
+     * 
+     * @throws SQLException if an error occurs during the database interaction.
+     */
+    @Test
+    public void testAnswerThreadCacheInvalidation() throws SQLException {
+        Question question = new Question("Test Question", "Test Body", "TestUser");
+        dbHelper.postQuestion(question);
+        Answer answer = new Answer("First", "AnswerUser", question.getId());
+        dbHelper.postAnswer(answer);
+
+        dbHelper.viewAnswersToQuestion(question.getId());
+        long hits = dbHelper.getAnswerCache().getHits();
+        assertEquals(1, dbHelper.viewAnswersToQuestion(question.getId()).getAnswers().size());
+        assertEquals(hits + 1, dbHelper.getAnswerCache().getHits());
+
+        dbHelper.postAnswer(new Answer("Second", "AnswerUser", question.getId()));
+        assertEquals(2, dbHelper.viewAnswersToQuestion(question.getId()).getAnswers().size());
+
+        dbHelper.updateAnswer(answer.getId(), "Edited");
+        assertEquals("Edited", dbHelper.viewAnswersToQuestion(question.getId()).getAnswers().get(0).getText());
+
+        dbHelper.markAnswerAsSolution(answer.getId());
+        assertTrue(dbHelper.viewAnswersToQuestion(question.getId()).getAnswers().get(0).getIsSolution());
+    }
+
+    /**
+     * Tests write-behind mode by queueing many writes and waiting for their futures.
+     * 
+     * @throws Exception if a queued write fails.
+     */
+    @Test
+    public void testWriteBehindGroupCommit() throws Exception {
+        dbHelper.enableWriteBehind(4, 3, 1, 5000);
+        List<java.util.concurrent.CompletableFuture<Integer>> posted = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            posted.add(dbHelper.postQuestion(new Question("Title" + i, "Body" + i, "User1")));
+        }
+        int lastId = posted.get(posted.size() - 1).get();
+        assertTrue(dbHelper.markQuestionAsResolved(lastId).get());
+        dbHelper.flushWrites();
+        assertEquals(20, dbHelper.listAllQuestions().getQuestions().size());
+        assertEquals(1, dbHelper.searchQuestions("title20").getQuestions().size());
+    }
+
+    /**
+     * Tests the asynchronous facade by posting and reading questions through futures.
+     * 
+     * @throws Exception if an asynchronous call fails.
+     */
+    @Test
+    public void testAsyncDatabaseHelper() throws Exception {
+        try (AsyncDatabaseHelper async = new AsyncDatabaseHelper(dbHelper, 4)) {
+            List<java.util.concurrent.CompletableFuture<Integer>> posted = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                posted.add(async.postQuestion(new Question("Async" + i, "Body" + i, "User1")));
+            }
+            java.util.concurrent.CompletableFuture.allOf(posted.toArray(new java.util.concurrent.CompletableFuture<?>[0])).get();
+            int qid = posted.get(0).get();
+            async.postAnswer(new Answer("Async answer", "User2", qid)).get();
+            assertEquals(8, async.listAllQuestions().get().getQuestions().size());
+            assertEquals(1, async.viewAnswersToQuestion(qid).get().getAnswers().size());
+            assertTrue(async.deleteAnswer(-1).thenApply(found -> !found).get());
+        }
+    }
+
+    /**
+     * Tests that operations are counted with their rows and that failures are recorded.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testOperationMetrics() throws Exception {
+        Question question = new Question("Metrics", "Body", "MetricsUser");
+        dbHelper.postQuestion(question).get();
+        dbHelper.postAnswer(new Answer("One", "MetricsUser", question.getId())).get();
+        dbHelper.postAnswer(new Answer("Two", "MetricsUser", question.getId())).get();
+        dbHelper.showAnswersToManage(question.getId());
+
+        DbMetrics metrics = dbHelper.getMetrics();
+        assertEquals(2, metrics.operation("postAnswer").getCount());
+        assertEquals(1, metrics.operation("showAnswersToManage(qid)").getCount());
+        assertEquals(2, metrics.operation("showAnswersToManage(qid)").getRows());
+        assertFalse(dbHelper.updateAnswer(-1, "missing").get());
+        assertEquals(0, metrics.operation("updateAnswer").getRows());
+        assertTrue(metrics.report().contains("postAnswer"));
+    }
+
+    /**
+     * Tests that the slow-query log records statements with their parameters and plan, and only
+     * re-runs plain SELECTs with EXPLAIN ANALYZE.
+     * 
+     * @throws Exception if a database call or reading the log fails.
+     */
+    @Test
+    public void testSlowQueryLog() throws Exception {
+        java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("slowlog");
+        dbHelper.enableSlowQueryLog(0, dir.resolve("slow.%g.log").toString());
+        Question question = new Question("Slow", "Body", "SlowUser");
+        dbHelper.postQuestion(question);
+        dbHelper.showAnswersToManage(question.getId());
+        int aid = dbHelper.postAnswer(new Answer("Answer", "User1", question.getId())).get();
+        dbHelper.markAnswerAsSolution(aid).get();
+        assertEquals(0, dbHelper.getSlowQueryLog().getDroppedStatementCount());
+        dbHelper.disableSlowQueryLog();
+
+        String log = new String(java.nio.file.Files.readAllBytes(dir.resolve("slow.0.log")));
+        assertTrue(log.contains("SQL: SELECT * FROM answers WHERE underQuestion = ?"));
+        assertTrue(log.contains("Parameters: [1=" + question.getId() + "]"));
+        assertTrue(log.contains("IDX_ANSWERS_UNDERQUESTION"));
+        assertTrue(log.contains("scanCount")); // A plain SELECT is re-run with EXPLAIN ANALYZE
+        int locking = log.indexOf("SQL: SELECT underQuestion, isSolution FROM answers WHERE id = ? FOR UPDATE");
+        assertTrue(locking >= 0);
+        int next = log.indexOf("Slow statement", locking);
+        assertFalse(log.substring(locking, next < 0 ? log.length() : next).contains("scanCount"));
+    }
+
+    /**
+     * Tests that the answer counters shown in listings follow posted, solved and deleted answers.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testAnswerCounters() throws Exception {
+        Question question = new Question("Counted", "Body", "CountUser");
+        dbHelper.postQuestion(question).get();
+        int first = dbHelper.postAnswer(new Answer("One", "CountUser", question.getId())).get();
+        dbHelper.postAnswers(List.of(new Answer("Two", "CountUser", question.getId()),
+                new Answer("Three", "CountUser", question.getId())));
+        assertTrue(dbHelper.markAnswerAsSolution(first).get());
+        assertTrue(dbHelper.markAnswerAsSolution(first).get());
+
+        Question listed = dbHelper.listAllQuestions().getQuestions().get(0);
+        assertEquals(3, listed.getAnswerCount());
+        assertEquals(1, listed.getSolutionCount());
+        assertNotNull(listed.getLastActivity());
+
+        assertTrue(dbHelper.deleteAnswer(first).get());
+        assertFalse(dbHelper.deleteAnswer(first).get());
+        listed = dbHelper.listQuestionsAfter(0, 10).getQuestions().get(0);
+        assertEquals(2, listed.getAnswerCount());
+        assertEquals(0, listed.getSolutionCount());
+    }
+
+    /**
+     * Tests that a thread loads its question and answers in one call, solutions first and in pages.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testLoadThread() throws Exception {
+        Question question = new Question("Thread", "Body", "ThreadUser");
+        dbHelper.postQuestion(question).get();
+        Question empty = new Question("Empty", "Body", "ThreadUser");
+        dbHelper.postQuestion(empty).get();
+        int first = dbHelper.postAnswer(new Answer("First", "User1", question.getId())).get();
+        dbHelper.postAnswer(new Answer("Second", "User2", question.getId())).get();
+        int third = dbHelper.postAnswer(new Answer("Third", "User3", question.getId())).get();
+        dbHelper.markAnswerAsSolution(third).get();
+
+        QuestionThread thread = dbHelper.loadThread(question.getId());
+        assertEquals("Thread", thread.getQuestion().getTitle());
+        assertEquals(3, thread.getAnswers().getAnswers().size());
+        assertEquals(third, thread.getAnswers().getAnswers().get(0).getId());
+        assertEquals(first, thread.getAnswers().getAnswers().get(1).getId());
+        assertFalse(thread.hasMoreAnswers());
+
+        QuestionThread page = dbHelper.loadThread(question.getId(), 1, 1);
+        assertEquals(1, page.getAnswers().getAnswers().size());
+        assertEquals(first, page.getAnswers().getAnswers().get(0).getId());
+        assertTrue(page.hasMoreAnswers());
+
+        assertTrue(dbHelper.loadThread(empty.getId()).getAnswers().getAnswers().isEmpty());
+        assertNull(dbHelper.loadThread(-1));
+    }
+
+    /**
+     * Tests that resolving with a solution only succeeds when the answer is under a question that is not deleted.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testResolveWithSolution() throws Exception {
+        Question question = new Question("Resolve", "Body", "ResolveUser");
+        dbHelper.postQuestion(question).get();
+        Question other = new Question("Other", "Body", "ResolveUser");
+        dbHelper.postQuestion(other).get();
+        int aid = dbHelper.postAnswer(new Answer("Answer", "User1", question.getId())).get();
+
+        assertEquals(DatabaseHelper.ResolveResult.CONFLICT, dbHelper.resolveWithSolution(other.getId(), aid).get());
+        assertFalse(dbHelper.loadThread(other.getId()).getQuestion().getResolved());
+        assertFalse(dbHelper.loadThread(question.getId()).getAnswers().getAnswers().get(0).getIsSolution());
+
+        assertEquals(DatabaseHelper.ResolveResult.RESOLVED, dbHelper.resolveWithSolution(question.getId(), aid).get());
+        assertEquals(DatabaseHelper.ResolveResult.RESOLVED, dbHelper.resolveWithSolution(question.getId(), aid).get());
+        QuestionThread thread = dbHelper.loadThread(question.getId());
+        assertTrue(thread.getQuestion().getResolved());
+        assertEquals(1, thread.getQuestion().getSolutionCount());
+        assertTrue(thread.getAnswers().getAnswers().get(0).getIsSolution());
+
+        Question deleted = new Question("Deleted", "Body", "ResolveUser");
+        dbHelper.postQuestion(deleted).get();
+        int orphan = dbHelper.postAnswer(new Answer("Orphan", "User1", deleted.getId())).get();
+        dbHelper.deleteQuestion(deleted.getId()).get();
+        assertEquals(DatabaseHelper.ResolveResult.NOT_FOUND, dbHelper.resolveWithSolution(deleted.getId(), orphan).get());
+        assertFalse(dbHelper.findAnswer(orphan).getIsSolution());
+    }
+
+    /**
+     * Tests that storage profiles build their URLs and that isolated databases do not share data.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testStorageProfiles() throws Exception {
+        assertEquals("jdbc:h2:~/HW2Database", StorageProfile.parse("file:~/HW2Database").getUrl());
+        assertEquals("jdbc:h2:/tmp/qa;CACHE_SIZE=65536;WRITE_DELAY=0;COMPRESS=TRUE", StorageProfile.file("/tmp/qa")
+                .withCacheSizeKb(65536).withWriteDelayMillis(0).withCompression(true).getUrl());
+        assertNotEquals(StorageProfile.memory().getUrl(), StorageProfile.memory().getUrl());
+
+        dbHelper.postQuestion(new Question("Only here", "Body", "User1")).get();
+        DatabaseHelper other = new DatabaseHelper(StorageProfile.memory());
+        other.connectToDatabase();
+        try {
+            assertTrue(other.listAllQuestions().getQuestions().isEmpty());
+        } finally {
+            other.closeConnection();
+        }
+        assertEquals(1, dbHelper.listAllQuestions().getQuestions().size());
+    }
+
+    /**
+     * Tests that the console renderer writes listings in full and pages through long ones.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testConsoleRenderer() throws Exception {
+        List<Question> questions = new ArrayList<Question>();
+        for (int i = 1; i <= 25; i++) {
+            questions.add(new Question("Title" + i, "Body" + i, "User1"));
+        }
+        dbHelper.postQuestions(questions);
+        QuestionList all = new QuestionList(dbHelper.listAllQuestions().getQuestions(), true);
+
+        java.io.StringWriter printed = new java.io.StringWriter();
+        new ConsoleRenderer(printed).print(all);
+        assertTrue(printed.toString().contains("25. Title25 (Unresolved)"));
+
+        java.io.StringWriter paged = new java.io.StringWriter();
+        new ConsoleRenderer(paged).page(all, new java.util.Scanner("n\nj 1\nq\n"));
+        String output = paged.toString();
+        assertTrue(output.contains("Screen 1 of 3"));
+        assertTrue(output.contains("Screen 2 of 3"));
+        assertFalse(output.contains("21. Title21"));
+        assertEquals(2, output.split("1\\. Title1 ", -1).length - 1);
+    }
+
+    /**
+     * Tests that deleted questions are hidden from listings and later moved to the archive with their answers.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testTombstoneCompaction() throws Exception {
+        Question question = new Question("Doomed", "Body", "TombstoneUser");
+        dbHelper.postQuestion(question).get();
+        Question kept = new Question("Kept", "Body", "TombstoneUser");
+        dbHelper.postQuestion(kept).get();
+        for (int i = 0; i < 3; i++) {
+            dbHelper.postAnswer(new Answer("Answer" + i, "User1", question.getId())).get();
+        }
+
+        assertTrue(dbHelper.deleteQuestion(question.getId()).get());
+        assertFalse(dbHelper.deleteQuestion(question.getId()).get());
+        assertNull(dbHelper.loadThread(question.getId()));
+        assertEquals(1, dbHelper.listAllQuestions().getQuestions().size());
+        assertTrue(dbHelper.showAnswersToManage("User1").getAnswers().isEmpty());
+        try {
+            dbHelper.postAnswer(new Answer("Late", "User1", question.getId())).get();
+            fail("Answering a deleted question should fail");
+        } catch (java.util.concurrent.ExecutionException | SQLException e) {
+            // Expected
+        }
+
+        dbHelper.enableCompaction(60000, 2, true); // Batches smaller than the answers, run by hand below
+        assertEquals(1, dbHelper.compactTombstones());
+        assertEquals(0, dbHelper.compactTombstones());
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT (SELECT COUNT(*) FROM questions), "
+                        + "(SELECT COUNT(*) FROM answers), (SELECT COUNT(*) FROM questions_archive), "
+                        + "(SELECT COUNT(*) FROM answers_archive)")) {
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+            assertEquals(0, rs.getInt(2));
+            assertEquals(1, rs.getInt(3));
+            assertEquals(3, rs.getInt(4));
+        }
+        assertEquals(kept.getId(), dbHelper.listAllQuestions().getQuestions().get(0).getId());
+    }
+
+    /**
+     * Tests that whole threads are served from the cache, and that a replayed resolve numbers
+     * answers solutions first, as the console does.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testCachedThreadAndBatchResolve() throws Exception {
+        Question question = new Question("Cached", "Body", "BatchUser");
+        dbHelper.postQuestion(question).get();
+        int[] aids = new int[3];
+        for (int i = 0; i < aids.length; i++) {
+            aids[i] = dbHelper.postAnswer(new Answer("Answer" + i, "User1", question.getId())).get();
+        }
+        dbHelper.markAnswerAsSolution(aids[2]).get();
+
+        dbHelper.loadThread(question.getId());
+        long hits = dbHelper.getAnswerCache().getHits();
+        QuestionThread thread = dbHelper.loadThread(question.getId());
+        assertEquals(hits + 1, dbHelper.getAnswerCache().getHits());
+        assertEquals(aids[2], thread.getAnswers().getID(1));
+        assertEquals(aids[1], dbHelper.loadThread(question.getId(), 1, 2).getAnswers().getID(1));
+
+        dbHelper.updateQuestion(question.getId(), "Edited", "Body").get();
+        assertEquals("Edited", dbHelper.loadThread(question.getId()).getQuestion().getTitle());
+
+        BatchRunner runner = new BatchRunner(dbHelper);
+        runner.run(new java.io.BufferedReader(new java.io.StringReader("BatchUser\tresolve\t1\t2\n")));
+        List<Answer> answers = dbHelper.loadThread(question.getId()).getAnswers().getAnswers();
+        assertEquals(aids[0], answers.get(0).getId());
+        assertTrue(answers.get(0).getIsSolution());
+        assertFalse(answers.get(2).getIsSolution());
+    }
+
+    /**
+     * Tests that a CSV export imports into another database with its quoting intact and its
+     * answers remapped to the new question ids.
+     * 
+     * @throws Exception if a database call or file operation fails.
+     */
+    @Test
+    public void testCorpusTransferRoundTrip() throws Exception {
+        Question question = new Question("Commas, \"quotes\"", "Line one\nline two, \"quoted\"", "User1");
+        dbHelper.postQuestion(question).get();
+        Question other = new Question("Plain", "Body", "User2");
+        dbHelper.postQuestion(other).get();
+        dbHelper.postAnswer(new Answer("Answer, with \"quotes\"\r\nand lines", "User2", question.getId())).get();
+        dbHelper.postAnswer(new Answer("Other answer", "User1", other.getId())).get();
+
+        java.io.File dump = java.io.File.createTempFile("corpus", ".csv");
+        dump.deleteOnExit();
+        java.io.PrintStream quiet = new java.io.PrintStream(java.io.OutputStream.nullOutputStream());
+        new CorpusTransfer(dbHelper, 1, quiet).exportTo(dump);
+
+        DatabaseHelper target = new DatabaseHelper(StorageProfile.memory());
+        target.connectToDatabase();
+        try {
+            target.postQuestion(new Question("Existing", "Shifts the new ids", "User3")).get();
+            CorpusTransfer transfer = new CorpusTransfer(target, 1, quiet);
+            transfer.importFrom(dump);
+            assertEquals(2, transfer.getQuestionCount());
+            assertEquals(2, transfer.getAnswerCount());
+            assertEquals(0, transfer.getRejectedCount());
+
+            List<Question> imported = target.listAllQuestions().getQuestions();
+            assertEquals(3, imported.size());
+            Question copy = imported.get(1);
+            assertNotEquals(question.getId(), copy.getId());
+            assertEquals(question.getTitle(), copy.getTitle());
+            assertEquals(question.getText(), copy.getText());
+            List<Answer> answers = target.loadThread(copy.getId()).getAnswers().getAnswers();
+            assertEquals(1, answers.size());
+            assertEquals("Answer, with \"quotes\"\r\nand lines", answers.get(0).getText());
+            assertEquals("Other answer", target.loadThread(imported.get(2).getId()).getAnswers().getAnswers().get(0).getText());
+        } finally {
+            target.closeConnection();
+        }
+    }
+
+    /**
+     * Tests that invalid records are skipped and counted, and that a failed import stops its reader thread.
+     * 
+     * @throws Exception if a file operation fails.
+     */
+    @Test
+    public void testCorpusTransferRejectsAndStops() throws Exception {
+        java.io.File dump = java.io.File.createTempFile("corpus", ".jsonl");
+        dump.deleteOnExit();
+        StringBuilder lines = new StringBuilder();
+        lines.append("{\"type\":\"question\",\"id\":7,\"title\":\"Kept\",\"text\":\"Body\",\"postedBy\":\"User1\",\"resolved\":false}\n");
+        lines.append("{\"type\":\"comment\",\"id\":8,\"text\":\"Body\",\"postedBy\":\"User1\"}\n");
+        lines.append("{\"type\":\"question\",\"id\":9,\"title\":\"").append("x".repeat(300))
+                .append("\",\"text\":\"Body\",\"postedBy\":\"User1\"}\n");
+        lines.append("{\"type\":\"answer\",\"id\":1,\"underQuestion\":42,\"text\":\"Lost\",\"postedBy\":\"User1\"}\n");
+        lines.append("{\"type\":\"answer\",\"id\":2,\"underQuestion\":7,\"text\":\"Found\",\"postedBy\":\"User1\"}\n");
+        lines.append("not json\n");
+        java.nio.file.Files.writeString(dump.toPath(), lines);
+
+        java.io.PrintStream quiet = new java.io.PrintStream(java.io.OutputStream.nullOutputStream());
+        CorpusTransfer transfer = new CorpusTransfer(dbHelper, 2, quiet);
+        transfer.importFrom(dump);
+        assertEquals(1, transfer.getQuestionCount());
+        assertEquals(1, transfer.getAnswerCount());
+        assertEquals(4, transfer.getRejectedCount());
+        assertEquals("Found", dbHelper.loadThread(dbHelper.listAllQuestions().getQuestions().get(0).getId())
+                .getAnswers().getAnswers().get(0).getText());
+
+        for (int i = 0; i < 100; i++) {
+            lines.append("{\"type\":\"question\",\"id\":").append(100 + i)
+                    .append(",\"title\":\"T\",\"text\":\"B\",\"postedBy\":\"User1\"}\n");
+        }
+        java.nio.file.Files.writeString(dump.toPath(), lines);
+        DatabaseHelper unconnected = new DatabaseHelper(StorageProfile.memory());
+        assertThrows(RuntimeException.class, () -> new CorpusTransfer(unconnected, 1, quiet).importFrom(dump));
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(t -> t.getName().equals("corpus-import-reader")));
+    }
+
+    /**
+     * Tests the question endpoints of the HTTP server, including paging by default, author checks and wrong methods.
+     * 
+     * @throws Exception if a request fails.
+     */
+    @Test
+    public void testServerQuestionEndpoints() throws Exception {
+        QaServer server = new QaServer(dbHelper, 0);
+        server.start();
+        try {
+            for (int i = 0; i < Menu.QUESTIONS_PER_PAGE + 1; i++) {
+                assertEquals(200, send(server, "POST", "/questions", "{\"title\":\"Q" + i
+                        + "\",\"text\":\"Body\"}", "Owner").statusCode());
+            }
+            assertEquals(403, send(server, "POST", "/questions", "{\"title\":\"T\",\"text\":\"B\"}", null).statusCode());
+            assertEquals(403, send(server, "POST", "/questions",
+                    "{\"title\":\"T\",\"text\":\"B\",\"postedBy\":\"Owner\"}", "Intruder").statusCode());
+            String page = send(server, "GET", "/questions", null, null).body();
+            assertTrue(page.contains("\"hasNextPage\":true"));
+            assertFalse(page.contains("\"Q" + Menu.QUESTIONS_PER_PAGE + "\""));
+            int qid = dbHelper.listAllQuestions().getQuestions().get(0).getId();
+            assertTrue(send(server, "GET", "/questions/" + qid, null, null).body().contains("\"title\":\"Q0\""));
+
+            String edit = "{\"title\":\"Edited\",\"text\":\"Body\"}";
+            assertEquals(403, send(server, "PUT", "/questions/" + qid, edit, null).statusCode());
+            assertEquals(403, send(server, "PUT", "/questions/" + qid, edit, "Intruder").statusCode());
+            assertEquals(200, send(server, "PUT", "/questions/" + qid, edit, "Owner").statusCode());
+            assertEquals(403, send(server, "POST", "/questions/" + qid + "/resolve", null, "Intruder").statusCode());
+            assertEquals(200, send(server, "POST", "/questions/" + qid + "/resolve", null, "Owner").statusCode());
+            assertEquals(403, send(server, "DELETE", "/questions/" + qid, null, "Intruder").statusCode());
+            assertEquals(200, send(server, "DELETE", "/questions/" + qid, null, "Owner").statusCode());
+            assertEquals(404, send(server, "GET", "/questions/" + qid, null, null).statusCode());
+
+            java.net.http.HttpResponse<String> wrong = send(server, "PATCH", "/questions/" + (qid + 1), "{}", "Owner");
+            assertEquals(405, wrong.statusCode());
+            assertEquals("GET, PUT, DELETE", wrong.headers().firstValue("Allow").orElse(""));
+            assertEquals(405, send(server, "GET", "/questions/" + (qid + 1) + "/resolve", null, null).statusCode());
+            assertEquals(404, send(server, "GET", "/nowhere", null, null).statusCode());
+            assertEquals(400, send(server, "GET", "/questions/abc", null, null).statusCode());
+        } finally {
+            server.stop(0);
+        }
+
+        QaServer broken = new QaServer(new DatabaseHelper(StorageProfile.memory()), 0); // Never connected
+        broken.start();
+        try {
+            assertEquals(500, send(broken, "GET", "/questions", null, null).statusCode());
+        } finally {
+            broken.stop(0);
+        }
+    }
+
+    /**
+     * Tests the answer, search and user endpoints of the HTTP server.
+     * 
+     * @throws Exception if a request fails.
+     */
+    @Test
+    public void testServerAnswerSearchAndUserEndpoints() throws Exception {
+        QaServer server = new QaServer(dbHelper, 0);
+        server.start();
+        try {
+            Question question = new Question("Served joins", "How do joins work?", "Asker");
+            dbHelper.postQuestion(question).get();
+            String created = send(server, "POST", "/questions/" + question.getId() + "/answers",
+                    "{\"text\":\"Use an index\",\"postedBy\":\"Helper\"}", "Helper").body();
+            int aid = Integer.parseInt(created.replaceAll("\\D", ""));
+            assertTrue(send(server, "GET", "/questions/" + question.getId() + "/answers", null, null).body()
+                    .contains("\"text\":\"Use an index\""));
+
+            String edit = "{\"text\":\"Use a covering index\"}";
+            assertEquals(403, send(server, "PUT", "/answers/" + aid, edit, "Asker").statusCode());
+            assertEquals(200, send(server, "PUT", "/answers/" + aid, edit, "Helper").statusCode());
+            assertEquals(403, send(server, "POST", "/answers/" + aid + "/solution", null, "Helper").statusCode());
+            assertEquals(200, send(server, "POST", "/answers/" + aid + "/solution", null, "Asker").statusCode());
+            assertTrue(dbHelper.findAnswer(aid).getIsSolution());
+            assertEquals(405, send(server, "GET", "/answers/" + aid, null, null).statusCode());
+
+            assertTrue(send(server, "GET", "/search?q=joins", null, null).body().contains("\"title\":\"Served joins\""));
+            assertEquals(400, send(server, "GET", "/search", null, null).statusCode());
+            assertEquals(405, send(server, "POST", "/search?q=joins", "{}", null).statusCode());
+            assertTrue(send(server, "GET", "/users/Asker/questions", null, null).body().contains("Served joins"));
+            assertTrue(send(server, "GET", "/users/Helper/answers", null, null).body().contains("Use a covering index"));
+
+            assertEquals(403, send(server, "DELETE", "/answers/" + aid, null, "Asker").statusCode());
+            assertEquals(200, send(server, "DELETE", "/answers/" + aid, null, "Helper").statusCode());
+            assertEquals(404, send(server, "DELETE", "/answers/" + aid, null, "Helper").statusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static java.net.http.HttpResponse<String> send(QaServer server, String method, String path, String body,
+            String user) throws Exception {
+        java.net.http.HttpRequest.Builder request = java.net.http.HttpRequest.newBuilder(
+                java.net.URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, body == null ? java.net.http.HttpRequest.BodyPublishers.noBody()
+                        : java.net.http.HttpRequest.BodyPublishers.ofString(body));
+        if (user != null) {
+            request.header("X-User", user);
+        }
+        return java.net.http.HttpClient.newHttpClient().send(request.build(),
+                java.net.http.HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Tests that the connection pool times out when exhausted, ignores a second release and
+     * closes broken and idle connections.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testConnectionPoolLifecycle() throws Exception {
+        ConnectionPool pool = new ConnectionPool(StorageProfile.memory().getUrl(), "sa", "", 1, 2, 200, 1, 0, 4);
+        try {
+            assertFalse(pool.isTraceBorrows(), "Borrow sites should only be captured when asked for");
+            PooledConnection a = pool.borrow();
+            PooledConnection b = pool.borrow();
+            assertThrows(SQLException.class, pool::borrow);
+            assertEquals(1, pool.getStats().getBorrowTimeouts());
+
+            b.close();
+            b.close();
+            assertEquals(1, pool.getBorrowedCount());
+            PooledConnection c = pool.borrow();
+            assertThrows(SQLException.class, pool::borrow, "A second release must not free another permit");
+            assertEquals(2, pool.getStats().getBorrowTimeouts());
+            c.close();
+            a.close();
+
+            long closed = pool.getStats().getClosed();
+            PooledConnection broken = pool.borrow();
+            broken.getConnection().close();
+            broken.close();
+            assertEquals(closed + 1, pool.getStats().getClosed());
+            assertEquals(0, pool.getBorrowedCount());
+
+            long deadline = System.currentTimeMillis() + 15000;
+            while (pool.getIdleCount() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(1, pool.getIdleCount(), "Idle connections above the minimum should be evicted");
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Tests that concurrent borrowers never hold more connections than the pool's maximum size.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testConnectionPoolConcurrentBorrow() throws Exception {
+        ConnectionPool pool = new ConnectionPool(StorageProfile.memory().getUrl(), "sa", "", 0, 3, 10000, 60000, 0, 4);
+        java.util.concurrent.atomic.AtomicInteger inUse = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.atomic.AtomicInteger maxInUse = new java.util.concurrent.atomic.AtomicInteger();
+        java.util.concurrent.ExecutorService threads = java.util.concurrent.Executors.newFixedThreadPool(8);
+        try {
+            List<java.util.concurrent.Future<?>> workers = new ArrayList<java.util.concurrent.Future<?>>();
+            for (int t = 0; t < 8; t++) {
+                workers.add(threads.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        try (PooledConnection conn = pool.borrow()) {
+                            maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                            conn.prepareCached("SELECT 1").executeQuery().close();
+                            inUse.decrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (java.util.concurrent.Future<?> worker : workers) {
+                worker.get();
+            }
+            assertTrue(maxInUse.get() <= 3);
+            assertEquals(0, pool.getBorrowedCount());
+            assertTrue(pool.getStats().getOpened() - pool.getStats().getClosed() <= 3);
+            assertEquals(1600, pool.getStats().getBorrows());
+        } finally {
+            threads.shutdownNow();
+            pool.close();
+        }
+    }
+
+    /**
+     * Tests that connecting records every schema migration once, and that connecting again applies nothing.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testSchemaMigrationsAppliedOnce() throws Exception {
+        List<Integer> applied = new ArrayList<Integer>();
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version ORDER BY version")) {
+            while (rs.next()) {
+                applied.add(rs.getInt(1));
+            }
+        }
+        assertEquals(List.of(1, 2, 3, 4), applied);
+
+        StorageProfile shared = StorageProfile.memory("migrations-" + System.nanoTime());
+        DatabaseHelper first = new DatabaseHelper(shared);
+        first.connectToDatabase();
+        Question question = new Question("Survives", "Body", "User1");
+        first.postQuestion(question).get();
+        first.closeConnection();
+
+        DatabaseHelper second = new DatabaseHelper(shared);
+        second.connectToDatabase();
+        try (Connection raw = DriverManager.getConnection(shared.getUrl(), "sa", "");
+                Statement stmt = raw.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*), MAX(version) FROM schema_version")) {
+                rs.next();
+                assertEquals(4, rs.getInt(1));
+                assertEquals(4, rs.getInt(2));
+            }
+            assertEquals("Survives", second.listAllQuestions().getQuestions().get(0).getTitle());
+            second.closeConnection();
+            stmt.execute("DROP ALL OBJECTS");
+        }
+    }
+
+    /**
+     * Tests that upgrading a database from before tombstones marks its deleted-question placeholders as deleted.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testSchemaMigrationBackfillsTombstones() throws Exception {
+        StorageProfile old = StorageProfile.memory("pre-tombstone-" + System.nanoTime());
+        try (Connection raw = DriverManager.getConnection(old.getUrl(), "sa", "");
+                Statement stmt = raw.createStatement()) {
+            stmt.execute("CREATE TABLE schema_version (version INT PRIMARY KEY, description VARCHAR(255), "
+                    + "appliedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("INSERT INTO schema_version (version, description) VALUES (1, 'v1'), (2, 'v2'), (3, 'v3')");
+            stmt.execute("CREATE TABLE questions (id INT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), "
+                    + "text VARCHAR(500), postedBy VARCHAR(255), resolved INT, answerCount INT DEFAULT 0 NOT NULL, "
+                    + "solutionCount INT DEFAULT 0 NOT NULL, lastActivity TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL)");
+            stmt.execute("CREATE TABLE answers (id INT AUTO_INCREMENT PRIMARY KEY, text VARCHAR(500), "
+                    + "postedBy VARCHAR(255), underQuestion INT, isSolution INT)");
+            stmt.execute("INSERT INTO questions (title, text, postedBy, resolved) VALUES "
+                    + "('This question has been deleted.', '--', '--', 0), ('Still here', 'Body', 'User1', 0)");
+
+            DatabaseHelper upgraded = new DatabaseHelper(old);
+            upgraded.connectToDatabase();
+            try (ResultSet rs = stmt.executeQuery("SELECT title, deleted FROM questions ORDER BY id")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt("deleted"));
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt("deleted"));
+            }
+            List<Question> listed = upgraded.listAllQuestions().getQuestions();
+            assertEquals(1, listed.size());
+            assertEquals("Still here", listed.get(0).getTitle());
+            try (ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+                rs.next();
+                assertEquals(4, rs.getInt(1));
+            }
+            upgraded.closeConnection();
+            stmt.execute("DROP ALL OBJECTS");
+        }
+    }
+
+    /**
+     * Tests that filtering a question list matches terms like the search index, ignoring case and the rendered decorations.
+     */
+    @Test
+    public void testQuestionListSearch() {
+        ArrayList<Question> questions = new ArrayList<Question>();
+        questions.add(new Question("Joining Tables", "How do I JOIN two tables?", "User1"));
+        questions.add(new Question("Indexes", "When should I add an index?", "User1"));
+        questions.add(new Question("Posted by", "Resolved", "User2"));
+        questions.add(new Question("No body", null, "User2"));
+
+        QuestionList list = new QuestionList(new ArrayList<Question>(questions));
+        list.search("join");
+        assertEquals(1, list.getQuestions().size());
+        assertEquals("Joining Tables", list.getQuestions().get(0).getTitle());
+
+        list = new QuestionList(new ArrayList<Question>(questions));
+        list.search("index* OR tables");
+        assertEquals(2, list.getQuestions().size());
+
+        list = new QuestionList(new ArrayList<Question>(questions));
+        list.search("user1");
+        assertTrue(list.getQuestions().isEmpty());
+
+        list = new QuestionList(new ArrayList<Question>(questions));
+        list.search("null");
+        assertTrue(list.getQuestions().isEmpty());
+        list = new QuestionList(new ArrayList<Question>(questions));
+        list.search("tables body");
+        assertTrue(list.getQuestions().isEmpty());
+    }
+
+    /**
+     * Tests that changing a thread or answer list returned from the cache does not change what later readers see.
+     * 
+     * @throws Exception if a database call fails.
+     */
+    @Test
+    public void testCachedThreadIsCopied() throws Exception {
+        Question question = new Question("Cached copy", "Body", "User1");
+        dbHelper.postQuestion(question).get();
+        dbHelper.postAnswer(new Answer("First", "User2", question.getId())).get();
+        dbHelper.postAnswer(new Answer("Second", "User2", question.getId())).get();
+        dbHelper.loadThread(question.getId());
+
+        QuestionThread thread = dbHelper.loadThread(question.getId());
+        thread.getQuestion().setTitle("Changed");
+        thread.getAnswers().getAnswers().get(0).markSolution();
+        thread.getAnswers().getAnswers().remove(1);
+        AnswerList answers = dbHelper.viewAnswersToQuestion(question.getId());
+        answers.getAnswers().clear();
+        dbHelper.loadThread(question.getId(), 1, 0).getAnswers().getAnswers().get(0).setAnswerText("Changed");
+
+        QuestionThread reread = dbHelper.loadThread(question.getId());
+        assertEquals("Cached copy", reread.getQuestion().getTitle());
+        assertEquals(2, reread.getAnswers().getAnswers().size());
+        assertEquals("First", reread.getAnswers().getAnswers().get(0).getText());
+        assertFalse(reread.getAnswers().getAnswers().get(0).getIsSolution());
+        assertEquals(2, dbHelper.viewAnswersToQuestion(question.getId()).getAnswers().size());
+    }
+
+    /**
+     * Tests that a ranked prefix query only matches through the terms it is scored on,
+     * so no hit scores zero, and that a question matching several OR groups appears once.
+     */
+    @Test
+    public void testRankedPrefixExpansionIsBounded() {
+        SearchIndex index = new SearchIndex();
+        for (int i = 0; i < 70; i++) {
+            index.indexQuestion(i, String.format("word%03d", i), "shared");
+        }
+
+        List<SearchIndex.SearchHit> hits = index.rank("word*", 100);
+        assertEquals(64, hits.size());
+        for (SearchIndex.SearchHit hit : hits) {
+            assertTrue(hit.getScore() > 0);
+            assertTrue(hit.getQuestionId() < 64);
+        }
+        assertEquals(70, index.rank("word* OR shared", 100).size());
+        assertEquals(1, index.rank("word069 shared", 100).size());
     }
 }
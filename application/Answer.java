@@ -4,22 +4,34 @@ package application;
  * The Answer class represents an answer entity in the system.
  * It contains the answer's attributes such as whether
  * it is marked as solution, and which question it is posted under.
+ * Answers read from the database also carry their database ID.
  */
 public class Answer {
+    private int id;
     private boolean isSolution;
     private String text;
     private String postedBy;
     private int underQuestion;
 
-    // Answer constructor
+    // Answer constructors
     public Answer(String text, String postedBy, int underQuestion) {
         this.isSolution = false;
         this.text = text;
         this.postedBy = postedBy;
         this.underQuestion = underQuestion;
     }
+    public Answer(int id, String text, String postedBy, int underQuestion, boolean isSolution) {
+        this.id = id;
+        this.isSolution = isSolution;
+        this.text = text;
+        this.postedBy = postedBy;
+        this.underQuestion = underQuestion;
+    }
     
     // Answer edit actions
+    public void setId(int id) {
+    	this.id = id;
+    }
     public void setAnswerText(String text) {
     	this.text = text;
     }
@@ -31,6 +43,7 @@ public class Answer {
     */
     
     // Answer getters
+    public int getId() { return id; }
     public boolean getIsSolution() { return isSolution; }
     public String getText() { return text; }
     public String getPostedBy() { return postedBy; }
@@ -3,28 +3,29 @@ import java.util.ArrayList;
 
 /**
  * The AnswerList class represents a list of answers in the system.
- * It contains an ArrayList of answer text as well as the
- * answers' IDs in the SQL database (If they are not consecutive).
+ * It contains an ArrayList of answers, which carry their own IDs in the SQL database.
+ * Lists the user can manage are numbered by position.
  */
 public class AnswerList {
-	private ArrayList<String> answers;
-	private ArrayList<Integer> db_ids;
+	private ArrayList<Answer> answers;
+	private boolean indexed;
 	
     // AnswerList constructors
-    public AnswerList(ArrayList<String> answers) {
+    public AnswerList(ArrayList<Answer> answers) {
     	this.answers = answers;
     }
-    public AnswerList(ArrayList<String> answers, ArrayList<Integer> db_ids) {
+    public AnswerList(ArrayList<Answer> answers, boolean indexed) {
     	this.answers = answers;
-    	this.db_ids = db_ids;
+    	this.indexed = indexed;
     }
     
     // AnswerList print function and getters
     public void print() {
-    	for (int i = 0; i < answers.size(); i++) {
-    		System.out.print(answers.get(i));
-    	}
+    	ConsoleRenderer.console().print(this);
     }
-    public ArrayList<String> getAnswers() { return answers; }
-    public ArrayList<Integer> getIDs() { return db_ids; }
+    public ArrayList<Answer> getAnswers() { return answers; }
+    public boolean isIndexed() { return indexed; }
+    
+    // Get the database ID of the answer shown as # index (numbered from 1)
+    public int getID(int index) { return answers.get(index - 1).getId(); }
 }
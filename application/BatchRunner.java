@@ -0,0 +1,246 @@
+package application;
+
+import databasePart1.DatabaseHelper;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * The BatchRunner class replays a script of console operations without prompting, running
+ * each one through the same Session operations as the Menu, and reports how long every kind
+ * of operation took along with the overall throughput.
+ *
+ * A script has one operation per line, with tab-separated fields: the user, the command and
+ * its arguments. Blank lines and lines starting with # are skipped. Any user name may be used.
+ *
+ *   post-question    title  text
+ *   post-answer      qid    text
+ *   list             [pages]          page through the questions, one page by default
+ *   answers          qid
+ *   search           query
+ *   my-questions
+ *   my-answers
+ *   update-question  n  title  text   n is the position in the user's own question list
+ *   resolve          n  m             m is the position in question n's thread, solutions first
+ *   delete-question  n
+ *   update-answer    n  text          n is the position in the user's own answer list
+ *   delete-answer    n
+ *
+ * A qid may be "last", meaning the question most recently posted by the script.
+ */
+public class BatchRunner {
+
+	/**
+	 * Timing of one kind of operation.
+	 */
+	static class OperationStats {
+		long count;
+		long errors;
+		long totalNanos;
+		long minNanos = Long.MAX_VALUE;
+		long maxNanos;
+
+		void record(long nanos, boolean failed) {
+			count++;
+			if (failed) {
+				errors++;
+			}
+			totalNanos += nanos;
+			minNanos = Math.min(minNanos, nanos);
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+	}
+
+	private final DatabaseHelper databaseHelper;
+	private final Map<String, Session> sessions = new HashMap<String, Session>();
+	private final Map<String, OperationStats> stats = new TreeMap<String, OperationStats>();
+	private int lastQuestionId = 0;
+	private long totalNanos = 0;
+
+	public BatchRunner(DatabaseHelper databaseHelper) {
+		this.databaseHelper = databaseHelper;
+	}
+
+	// Run every operation of a script, reporting failed lines on System.err
+	public void run(BufferedReader script) throws IOException {
+		long start = System.nanoTime();
+		String line;
+		int lineNumber = 0;
+		while ((line = script.readLine()) != null) {
+			lineNumber++;
+			if (line.isBlank() || line.startsWith("#")) {
+				continue;
+			}
+			String[] fields = line.split("\t");
+			if (fields.length < 2) {
+				System.err.println("Line " + lineNumber + ": expected a user and a command");
+				continue;
+			}
+			Session session = sessions.computeIfAbsent(fields[0], user -> new Session(databaseHelper, user));
+			boolean failed = false;
+			long began = System.nanoTime();
+			try {
+				execute(session, fields);
+			} catch (SQLException | RuntimeException e) {
+				failed = true;
+				System.err.println("Line " + lineNumber + ": " + fields[1] + " failed: " + e);
+			}
+			stats.computeIfAbsent(fields[1], c -> new OperationStats()).record(System.nanoTime() - began, failed);
+		}
+		totalNanos += System.nanoTime() - start;
+	}
+
+	private void execute(Session session, String[] fields) throws SQLException {
+		String command = fields[1];
+		switch (command) {
+		case "post-question":
+			lastQuestionId = session.postQuestion(arg(fields, 2), arg(fields, 3));
+			break;
+		case "post-answer":
+			session.postAnswer(questionId(arg(fields, 2)), arg(fields, 3));
+			break;
+		case "list":
+			int pages = fields.length > 2 ? Integer.parseInt(fields[2]) : 1;
+			QuestionList page = session.firstPage(Menu.QUESTIONS_PER_PAGE);
+			for (int i = 1; i < pages && page.hasNextPage(); i++) {
+				page = session.nextPage(page, Menu.QUESTIONS_PER_PAGE);
+			}
+			break;
+		case "answers":
+			session.viewThread(questionId(arg(fields, 2)));
+			break;
+		case "search":
+			session.search(arg(fields, 2));
+			break;
+		case "my-questions":
+			session.myQuestions();
+			break;
+		case "my-answers":
+			session.myAnswers();
+			break;
+		case "update-question":
+			session.updateQuestion(session.myQuestions().getID(position(fields, 2)), arg(fields, 3), arg(fields, 4));
+			break;
+		case "resolve":
+			int qid = session.myQuestions().getID(position(fields, 2));
+			QuestionThread thread = session.viewThread(qid);
+			if (thread == null) {
+				throw new IllegalArgumentException("There is no question " + qid);
+			}
+			session.resolveQuestion(qid, thread.getAnswers().getID(position(fields, 3)));
+			break;
+		case "delete-question":
+			session.deleteQuestion(session.myQuestions().getID(position(fields, 2)));
+			break;
+		case "update-answer":
+			session.updateAnswer(session.myAnswers().getID(position(fields, 2)), arg(fields, 3));
+			break;
+		case "delete-answer":
+			session.deleteAnswer(session.myAnswers().getID(position(fields, 2)));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown command " + command);
+		}
+	}
+
+	private static String arg(String[] fields, int index) {
+		if (index >= fields.length) {
+			throw new IllegalArgumentException("Missing argument " + (index - 1));
+		}
+		return fields[index];
+	}
+
+	private static int position(String[] fields, int index) {
+		return Integer.parseInt(arg(fields, index));
+	}
+
+	private int questionId(String value) {
+		return value.equals("last") ? lastQuestionId : Integer.parseInt(value);
+	}
+
+	// Print per-operation timings and the overall throughput
+	public void printReport(PrintStream out) {
+		long operations = 0, errors = 0;
+		out.println(String.format("%-16s %8s %7s %10s %10s %10s", "operation", "count", "errors", "mean ms", "min ms", "max ms"));
+		for (Map.Entry<String, OperationStats> e : stats.entrySet()) {
+			OperationStats s = e.getValue();
+			operations += s.count;
+			errors += s.errors;
+			out.println(String.format("%-16s %8d %7d %10.3f %10.3f %10.3f", e.getKey(), s.count, s.errors,
+					s.totalNanos / 1e6 / s.count, s.minNanos / 1e6, s.maxNanos / 1e6));
+		}
+		double seconds = totalNanos / 1e9;
+		out.println(String.format("%d operations (%d failed) in %.3f s, %.1f operations/s", operations, errors,
+				seconds, seconds == 0 ? 0.0 : operations / seconds));
+	}
+
+	// Write a random script of the given number of operations spread across the given number of users.
+	// Its question IDs assume the script is replayed against an empty database.
+	public static void generate(PrintStream out, int operations, int users, long seed) {
+		Random random = new Random(seed);
+		int questions = 0;
+		String[] words = {"sql", "join", "index", "java", "thread", "pool", "query", "cache", "lock", "table"};
+		for (int i = 0; i < operations; i++) {
+			String user = "user" + random.nextInt(users);
+			String words3 = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+					+ " " + words[random.nextInt(words.length)];
+			int roll = questions == 0 ? 0 : random.nextInt(100);
+			if (roll < 15) {
+				out.println(user + "\tpost-question\tAbout " + words3 + "\tHow do I use " + words3 + "?");
+				questions++;
+			} else if (roll < 35) {
+				out.println(user + "\tpost-answer\t" + (1 + random.nextInt(questions)) + "\tTry " + words3);
+			} else if (roll < 60) {
+				out.println(user + "\tanswers\t" + (1 + random.nextInt(questions)));
+			} else if (roll < 80) {
+				out.println(user + "\tlist\t" + (1 + random.nextInt(3)));
+			} else if (roll < 95) {
+				out.println(user + "\tsearch\t" + words[random.nextInt(words.length)]);
+			} else {
+				out.println(user + "\tmy-answers");
+			}
+		}
+	}
+
+	// Replay a script file, or standard input for "-", and print the report
+	public static void runScript(DatabaseHelper databaseHelper, String path) throws IOException {
+		try (BufferedReader script = path.equals("-")
+				? new BufferedReader(new InputStreamReader(System.in))
+				: new BufferedReader(new FileReader(path))) {
+			BatchRunner runner = new BatchRunner(databaseHelper);
+			runner.run(script);
+			runner.printReport(System.out);
+		}
+	}
+
+	// Usage: BatchRunner <script|-> | --generate <operations> <users> [seed]
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && args[0].equals("--generate")) {
+			generate(System.out, Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+					args.length > 3 ? Long.parseLong(args[3]) : 1);
+			return;
+		}
+		if (args.length != 1) {
+			System.err.println("Usage: BatchRunner <script|-> | --generate <operations> <users> [seed]");
+			System.exit(2);
+		}
+		DatabaseHelper databaseHelper = new DatabaseHelper();
+		try {
+			databaseHelper.connectToDatabase();
+			runScript(databaseHelper, args[0]);
+		} catch (SQLException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		} finally {
+			databaseHelper.closeConnection();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package application;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * The ConsoleRenderer class writes questions and answers to the console. Items are formatted
+ * one at a time into a single buffered writer, which is flushed once a listing is complete,
+ * so printing a long list takes a few large writes to System.out instead of one per item and
+ * never holds the whole listing in memory.
+ *
+ * Long lists can also be shown in pager mode, one screen of items at a time, with commands
+ * to move to the next or previous screen, jump to a screen, or stop.
+ */
+public class ConsoleRenderer {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+	// Items shown per screen in pager mode
+	public static final int ITEMS_PER_SCREEN = 10;
+
+	private static final DateTimeFormatter LAST_ACTIVITY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+	private static final String SEPARATOR = "------------------------------------------";
+
+	private static ConsoleRenderer console;
+
+	/**
+	 * Writes the items in [from, to) of a list.
+	 */
+	interface Range {
+		void render(int from, int to);
+	}
+
+	private final PrintWriter out;
+	private final OutputStream target;
+
+	public ConsoleRenderer(Writer writer) {
+		this.out = new PrintWriter(new BufferedWriter(writer, BUFFER_SIZE), false);
+		this.target = null;
+	}
+
+	private ConsoleRenderer(PrintStream stream) {
+		this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream), BUFFER_SIZE), false);
+		this.target = stream;
+	}
+
+	// The renderer for System.out, replaced if System.out is redirected
+	public static synchronized ConsoleRenderer console() {
+		if (console == null || console.target != System.out) {
+			console = new ConsoleRenderer(System.out);
+		}
+		return console;
+	}
+
+	public void print(QuestionList list) {
+		questions(list, 0, list.getQuestions().size());
+		out.flush();
+	}
+
+	public void print(AnswerList list) {
+		answers(list, 0, list.getAnswers().size());
+		out.flush();
+	}
+
+	public void print(QuestionThread thread) {
+		question(thread.getQuestion().getId(), thread.getQuestion());
+		AnswerList answers = thread.getAnswers();
+		answers(answers, 0, answers.getAnswers().size());
+		int shown = answers.getAnswers().size();
+		if (thread.getOffset() > 0 || thread.hasMoreAnswers()) {
+			int offset = thread.getOffset();
+			out.println("Showing answers " + (shown == 0 ? offset : offset + 1) + "-" + (offset + shown)
+					+ " of " + thread.getQuestion().getAnswerCount() + ".");
+		}
+		out.flush();
+	}
+
+	// Write the questions in [from, to), numbered by position if the list is indexed
+	private void questions(QuestionList list, int from, int to) {
+		List<Question> questions = list.getQuestions();
+		for (int i = from; i < to; i++) {
+			Question q = questions.get(i);
+			question(list.isIndexed() ? i + 1 : q.getId(), q);
+		}
+	}
+
+	private void question(int number, Question q) {
+		out.print(number);
+		out.print(". ");
+		out.print(q.getTitle());
+		out.println(q.getResolved() ? " (Resolved)" : " (Unresolved)");
+		out.print("Posted by: ");
+		out.print(q.getPostedBy());
+		out.print(" | Answers: ");
+		out.print(q.getAnswerCount());
+		out.print(" | Solutions: ");
+		out.print(q.getSolutionCount());
+		if (q.getLastActivity() != null) {
+			out.print(" | Last activity: ");
+			out.print(q.getLastActivity().format(LAST_ACTIVITY_FORMAT));
+		}
+		out.println();
+		out.println(q.getText());
+		out.println(SEPARATOR);
+	}
+
+	// Write the answers in [from, to), numbered by position if the list is indexed
+	private void answers(AnswerList list, int from, int to) {
+		List<Answer> answers = list.getAnswers();
+		for (int i = from; i < to; i++) {
+			Answer a = answers.get(i);
+			if (list.isIndexed()) {
+				out.print(i + 1);
+				out.print(". ");
+			}
+			if (a.getIsSolution()) {
+				out.print("(Solution) ");
+			}
+			out.println(a.getText());
+			out.print("Posted by: ");
+			out.println(a.getPostedBy());
+			out.println(SEPARATOR);
+		}
+	}
+
+	public void page(QuestionList list, Scanner scnr) {
+		page(list.getQuestions().size(), scnr, (from, to) -> questions(list, from, to));
+	}
+
+	public void page(AnswerList list, Scanner scnr) {
+		page(list.getAnswers().size(), scnr, (from, to) -> answers(list, from, to));
+	}
+
+	// Show the question, then page through its answers
+	public void page(QuestionThread thread, Scanner scnr) {
+		question(thread.getQuestion().getId(), thread.getQuestion());
+		page(thread.getAnswers(), scnr);
+	}
+
+	// Show a list ITEMS_PER_SCREEN items at a time until the user quits or input ends.
+	// A list that fits on one screen is printed without prompting.
+	void page(int total, Scanner scnr, Range range) {
+		int screens = Math.max(1, (total + ITEMS_PER_SCREEN - 1) / ITEMS_PER_SCREEN);
+		int screen = 0;
+		while (true) {
+			range.render(screen * ITEMS_PER_SCREEN, Math.min(total, (screen + 1) * ITEMS_PER_SCREEN));
+			if (screens == 1) {
+				out.flush();
+				return;
+			}
+			out.println("Screen " + (screen + 1) + " of " + screens
+					+ ": [n] next, [p] previous, [j #] jump to screen, [q] done");
+			out.flush();
+			int next = screen;
+			while (next == screen) {
+				if (!scnr.hasNextLine()) {
+					return;
+				}
+				String[] command = scnr.nextLine().trim().split("\\s+");
+				next = nextScreen(command, screen, screens);
+				if (next < 0) {
+					return;
+				}
+				if (next == screen) {
+					System.out.println("Invalid selection. Please try again.");
+				}
+			}
+			screen = next;
+		}
+	}
+
+	// The screen a pager command moves to, the current one if it is invalid, or -1 to quit
+	static int nextScreen(String[] command, int screen, int screens) {
+		switch (command[0].toLowerCase()) {
+		case "q":
+			return -1;
+		case "n":
+		case "":
+			return screen + 1 < screens ? screen + 1 : -1; // Moving past the last screen is done
+		case "p":
+			return screen > 0 ? screen - 1 : screen;
+		case "j":
+			try {
+				int target = Integer.parseInt(command[command.length - 1]) - 1;
+				return target >= 0 && target < screens ? target : screen;
+			} catch (NumberFormatException e) {
+				return screen;
+			}
+		default:
+			return screen;
+		}
+	}
+
+	public void flush() {
+		out.flush();
+	}
+}
@@ -2,45 +2,97 @@ package application;
 
 import databasePart1.DatabaseHelper;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Scanner;
 
 public class Main {
+	// Storage is chosen with -DdbStorage=mem|file:PATH and tuned with the other db* properties (see StorageProfile)
 	private static final DatabaseHelper databaseHelper = new DatabaseHelper();
 	
 	static String[] users = {null, "Student A", "Student B", "Student C"};
 	static String currentUser = null;
 	
-	// Prompt the user to sign in
+	// How often server mode prints the database metrics report
+	static final long METRICS_REPORT_MILLIS = 60000;
+	
+	// Where statements slower than -DslowQueryMillis=N are logged, in rotating files
+	static final String SLOW_QUERY_LOG_PATTERN = "%h/HW2-slow-queries.%g.log";
+	
+	// Prompt the user to sign in, asking again until the selection is valid
 	static void userSelect(Scanner scnr) {
-		System.out.println("Select a user to sign in as: ");
-		System.out.println("[1] Student A");
-		System.out.println("[2] Student B");
-		System.out.println("[3] Student C");
-		System.out.println("Enter the # corresponding to your choice: ");
-		int input = scnr.nextInt();
-		if (input < users.length) {
-			currentUser = users[input];
-			System.out.println("You are now signed in as " + currentUser + ".");
-		} else {
-			System.out.println("Invalid selection. Please try again.");
-			userSelect(scnr);
+		while (currentUser == null) {
+			System.out.println("Select a user to sign in as: ");
+			System.out.println("[1] Student A");
+			System.out.println("[2] Student B");
+			System.out.println("[3] Student C");
+			System.out.println("Enter the # corresponding to your choice: ");
+			if (!scnr.hasNext()) {
+				return; // No more input
+			}
+			int input = scnr.hasNextInt() ? scnr.nextInt() : -1;
+			scnr.nextLine();
+			if (input >= 1 && input < users.length) {
+				currentUser = users[input];
+				System.out.println("You are now signed in as " + currentUser + ".");
+			} else {
+				System.out.println("Invalid selection. Please try again.");
+			}
+		}
+	}
+	
+	// Serve the Q&A operations over HTTP until the process is stopped
+	static void startServer(int port) {
+		try {
+			QaServer server = new QaServer(databaseHelper, port);
+			databaseHelper.exposeMetrics("HW2", METRICS_REPORT_MILLIS);
+			databaseHelper.enableCompaction();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				server.stop(1);
+				databaseHelper.closeConnection();
+			}));
+			server.start();
+		} catch (IOException e) {
+			System.out.println("Could not start the server: " + e.getMessage());
 		}
 	}
 	
-	// Start the application main menu
+	// Start the application main menu, the HTTP server with --server [port],
+	// or replay an operation script with --batch <script|->
 	public static void main(String[] args) {
         try {
             databaseHelper.connectToDatabase(); // Connect to the database
         } catch (SQLException e) {
         	System.out.println(e.getMessage());
         }
+        long slowQueryMillis = Long.getLong("slowQueryMillis", 0);
+        if (slowQueryMillis > 0) {
+        	try {
+        		databaseHelper.enableSlowQueryLog(slowQueryMillis, SLOW_QUERY_LOG_PATTERN);
+        	} catch (IOException | IllegalStateException e) {
+        		System.out.println("Could not open the slow-query log: " + e.getMessage());
+        	}
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+        	startServer(args.length > 1 ? Integer.parseInt(args[1]) : QaServer.DEFAULT_PORT);
+        	return;
+        }
+        if (args.length > 1 && args[0].equals("--batch")) {
+        	try {
+        		BatchRunner.runScript(databaseHelper, args[1]);
+        	} catch (IOException e) {
+        		System.out.println("Could not read the script: " + e.getMessage());
+        	}
+        	databaseHelper.closeConnection();
+        	return;
+        }
         Scanner scnr = new Scanner(System.in);
 		userSelect(scnr);
 		Menu m = new Menu(databaseHelper, currentUser);
 		m.mainMenu(scnr);
 		
 		scnr.close();
+		databaseHelper.closeConnection();
 	}
 
 }
@@ -3,6 +3,8 @@ package application;
 import databasePart1.DatabaseHelper;
 
 import java.sql.SQLException;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 /**
@@ -12,35 +14,72 @@ import java.util.Scanner;
 
 public class Menu {
 	
-    private final DatabaseHelper databaseHelper;
-    private String currentUser;
+	public static final int QUESTIONS_PER_PAGE = 10;
+	
+    private final Session session;
     
     public Menu(DatabaseHelper databaseHelper, String currentUser) {
-        this.databaseHelper = databaseHelper;
-        this.currentUser = currentUser;
+        this.session = new Session(databaseHelper, currentUser);
     }
 
+	// The screens of the console; each one returns the screen to show next
+	public enum Screen { MAIN, QUESTIONS, MANAGE_QUESTIONS, MANAGE_ANSWERS, EXIT }
+
+	// Run the console until the user exits or the input ends. Every screen returns to this
+	// loop instead of calling the next one, so the stack stays flat however long the session
+	// runs, and the lists a screen fetched can be collected as soon as it is left.
 	public void mainMenu(Scanner scnr) {
+		Screen screen = Screen.MAIN;
+		while (screen != Screen.EXIT) {
+			try {
+				screen = show(screen, scnr);
+			} catch (InputMismatchException | IndexOutOfBoundsException e) {
+				if (e instanceof InputMismatchException) {
+					scnr.nextLine();
+				}
+				System.out.println("Invalid selection. Please try again.");
+			} catch (NoSuchElementException e) {
+				screen = Screen.EXIT; // No more input
+			} catch (SQLException e) {
+				System.out.println("The operation failed. Please try again.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private Screen show(Screen screen, Scanner scnr) throws SQLException {
+		switch (screen) {
+		case QUESTIONS: return viewAllQuestions(scnr);
+		case MANAGE_QUESTIONS: return manageQuestions(scnr);
+		case MANAGE_ANSWERS: return manageAnswers(scnr);
+		default: return mainScreen(scnr);
+		}
+	}
+
+	private Screen mainScreen(Scanner scnr) throws SQLException {
 		System.out.println("Welcome to the HW2 question and answer system. Select an option to proceed.");
 		System.out.println("[1] Post new question");
 		System.out.println("[2] View all questions");
 		System.out.println("[3] Manage my questions");
 		System.out.println("[4] Manage my answers");
+		System.out.println("[5] Exit");
 		System.out.println("Enter the # corresponding to your choice: ");
 		int input = scnr.nextInt();
 		scnr.nextLine();
 		if (input == 1) {
 			postNewQuestion(scnr);
 		} else if (input == 2) {
-			viewAllQuestions(scnr);
+			return Screen.QUESTIONS;
 		} else if (input == 3) {
-			manageQuestions(scnr);
+			return Screen.MANAGE_QUESTIONS;
 		} else if (input == 4) {
-			manageAnswers(scnr);
+			return Screen.MANAGE_ANSWERS;
+		} else if (input == 5) {
+			return Screen.EXIT;
 		} else {
 			System.out.println("Invalid selection. Please try again.");
-			mainMenu(scnr);
 		}
+		return Screen.MAIN;
 	}
     
 	public void postNewQuestion(Scanner scnr) {
@@ -48,35 +87,51 @@ public class Menu {
 		String title = scnr.nextLine();
 		System.out.println("Body: ");
 		String text = scnr.nextLine();
-		Question q = new Question(title, text, currentUser);
 		try {
-			databaseHelper.postQuestion(q);
+			session.postQuestion(title, text);
 			System.out.println("Question successfully posted!");
 		} catch (SQLException e) {
 			System.out.println("Question failed to post. Please try again.");
 			e.printStackTrace();
 		}
-		mainMenu(scnr);
 	}
     
-	public void viewAllQuestions(Scanner scnr) {
-		QuestionList allQuestions = databaseHelper.listAllQuestions();
-		allQuestions.print();
-		System.out.println("[1] Post an answer to a question");
-		System.out.println("[2] View the answers to a question");
-		System.out.println("[3] Search for questions");
-		System.out.println("[4] Return to the main menu");
-		System.out.println("Enter the # corresponding to your choice: ");
-		int input = scnr.nextInt();
-		scnr.nextLine();
-		if (input == 1) {
-			postNewAnswer(scnr);
-		} else if (input == 2) {
-			viewAnswersToQuestion(scnr);
-		} else if (input == 3) {
-			searchQuestions(scnr, allQuestions);
-		} else if (input == 4) {
-			mainMenu(scnr);
+	// Page through all questions with next/previous page navigation
+	public Screen viewAllQuestions(Scanner scnr) throws SQLException {
+		QuestionList page = session.firstPage(QUESTIONS_PER_PAGE);
+		while (true) {
+			page.print();
+			System.out.println("[1] Post an answer to a question");
+			System.out.println("[2] View the answers to a question");
+			System.out.println("[3] Search for questions");
+			System.out.println("[4] Return to the main menu");
+			if (page.hasNextPage()) {
+				System.out.println("[5] Next page");
+			}
+			if (page.hasPreviousPage()) {
+				System.out.println("[6] Previous page");
+			}
+			System.out.println("Enter the # corresponding to your choice: ");
+			int input = scnr.nextInt();
+			scnr.nextLine();
+			if (input == 1) {
+				postNewAnswer(scnr);
+				return Screen.MAIN;
+			} else if (input == 2) {
+				viewAnswersToQuestion(scnr);
+				return Screen.MAIN;
+			} else if (input == 3) {
+				searchQuestions(scnr);
+				return Screen.MAIN;
+			} else if (input == 4) {
+				return Screen.MAIN;
+			} else if (input == 5 && page.hasNextPage()) {
+				page = session.nextPage(page, QUESTIONS_PER_PAGE);
+			} else if (input == 6 && page.hasPreviousPage()) {
+				page = session.previousPage(page, QUESTIONS_PER_PAGE);
+			} else {
+				System.out.println("Invalid selection. Please try again.");
+			}
 		}
 	}
 	
@@ -86,29 +141,30 @@ public class Menu {
 		scnr.nextLine();
 		System.out.println("Enter answer text: ");
 		String text = scnr.nextLine();
-		Answer a = new Answer(text, currentUser, qid);
 		try {
-			databaseHelper.postAnswer(a);
+			session.postAnswer(qid, text);
 			System.out.println("Answer successfully posted!");
 		} catch (SQLException e) {
 			System.out.println("Answer failed to post. Please try again.");
 			e.printStackTrace();
 		}
-		mainMenu(scnr);
 	}
 	
 	public void viewAnswersToQuestion(Scanner scnr) {
 		System.out.println("Enter the # corresponding to the question you want to see the answers to: ");
 		int qid = scnr.nextInt();
 		scnr.nextLine();
-		AnswerList answersToQuestion = databaseHelper.viewAnswersToQuestion(qid);
+		QuestionThread thread = session.viewThread(qid);
+		if (thread == null) {
+			System.out.println("There is no question " + qid + ".");
+			return;
+		}
 		System.out.println("Here are all the answers to question " + qid + ".\nSome of these answers may not be correct. Look out for the answer(s) marked \"(Solution)\".");
 		System.out.println("------------------------------------------");
-		answersToQuestion.print();
-		mainMenu(scnr);
+		ConsoleRenderer.console().page(thread, scnr);
 	}
 	
-	public void manageQuestions(Scanner scnr) {
+	public Screen manageQuestions(Scanner scnr) throws SQLException {
 		System.out.println("[1] Edit a question");
 		System.out.println("[2] Mark a question as resolved");
 		System.out.println("[3] Delete a question");
@@ -122,12 +178,14 @@ public class Menu {
 			resolveQuestion(scnr);
 		} else if (input == 3) {
 			deleteQuestion(scnr);
-		} else if (input == 4) {
-			mainMenu(scnr);
+		} else if (input != 4) {
+			System.out.println("Invalid selection. Please try again.");
+			return Screen.MANAGE_QUESTIONS;
 		}
+		return Screen.MAIN;
 	}
 	
-	public void manageAnswers(Scanner scnr) {
+	public Screen manageAnswers(Scanner scnr) throws SQLException {
 		System.out.println("[1] Update an answer");
 		System.out.println("[2] Delete an answer");
 		System.out.println("[3] Return to the main menu");
@@ -138,27 +196,28 @@ public class Menu {
 			updateAnswer(scnr);
 		} else if (input == 2) {
 			deleteAnswer(scnr);
-		} else if (input == 3) {
-			mainMenu(scnr);
+		} else if (input != 3) {
+			System.out.println("Invalid selection. Please try again.");
+			return Screen.MANAGE_ANSWERS;
 		}
+		return Screen.MAIN;
 	}
 	
-	public void updateAnswer(Scanner scnr) {
-		AnswerList answers = databaseHelper.showAnswersToManage(currentUser);
-		answers.print();
+	public void updateAnswer(Scanner scnr) throws SQLException {
+		AnswerList answers = session.myAnswers();
+		ConsoleRenderer.console().page(answers, scnr);
 		System.out.println("Enter the # corresponding to the answer you want to update: ");
 		int pseud_id = scnr.nextInt();
 		scnr.nextLine();
 		System.out.println("Enter updated answer text: ");
 		String text = scnr.nextLine();
-		databaseHelper.updateAnswer(answers.getIDs().get(pseud_id), text);
+		session.updateAnswer(answers.getID(pseud_id), text);
 		System.out.println("Answer successfully updated.");
-		mainMenu(scnr);
 	}
 	
-	public void deleteAnswer(Scanner scnr) {
-		AnswerList answers = databaseHelper.showAnswersToManage(currentUser);
-		answers.print();
+	public void deleteAnswer(Scanner scnr) throws SQLException {
+		AnswerList answers = session.myAnswers();
+		ConsoleRenderer.console().page(answers, scnr);
 		System.out.println("Enter the # corresponding to the answer you want to delete: ");
 		int pseud_id = scnr.nextInt();
 		scnr.nextLine();
@@ -169,27 +228,25 @@ public class Menu {
 		int input = scnr.nextInt();
 		scnr.nextLine();
 		if (input == 1) {
-			databaseHelper.deleteAnswer(answers.getIDs().get(pseud_id));
+			session.deleteAnswer(answers.getID(pseud_id));
 			System.out.println("Answer successfully deleted.");
 		} else if (input == 2) {
 			System.out.println("Your answer has not been deleted.");
 		}
-		mainMenu(scnr);
 	}
 	
-	public void searchQuestions(Scanner scnr, QuestionList ql) {
-		System.out.println("Enter search term: ");
+	public void searchQuestions(Scanner scnr) {
+		System.out.println("Enter search terms (use OR between alternatives and * for prefixes): ");
 		String filter = scnr.nextLine();
-		ql.search(filter);
+		QuestionList ql = session.search(filter);
 		System.out.println("Below are the results of your search.");
 		System.out.println("------------------------------------------");
 		ql.print();
-		mainMenu(scnr);
 	}
 	
-	public void updateQuestion(Scanner scnr) {
-		QuestionList questions = databaseHelper.showQuestionsToManage(currentUser);
-		questions.print();
+	public void updateQuestion(Scanner scnr) throws SQLException {
+		QuestionList questions = session.myQuestions();
+		ConsoleRenderer.console().page(questions, scnr);
 		System.out.println("Enter the # corresponding to the question you want to edit: ");
 		int pseud_id = scnr.nextInt();
 		scnr.nextLine();
@@ -197,31 +254,36 @@ public class Menu {
 		String title = scnr.nextLine();
 		System.out.println("Enter updated question text: ");
 		String text = scnr.nextLine();
-		databaseHelper.updateQuestion(questions.getIDs().get(pseud_id), title, text);
+		session.updateQuestion(questions.getID(pseud_id), title, text);
 		System.out.println("Question successfully edited.");
-		mainMenu(scnr);
 	}
 	
-	public void resolveQuestion(Scanner scnr) {
-		QuestionList questions = databaseHelper.showQuestionsToManage(currentUser);
-		questions.print();
+	public void resolveQuestion(Scanner scnr) throws SQLException {
+		QuestionList questions = session.myQuestions();
+		ConsoleRenderer.console().page(questions, scnr);
 		System.out.println("Enter the # corresponding to the question you want to mark as resolved: ");
 		int pseud_id = scnr.nextInt();
 		scnr.nextLine();
-		AnswerList answers = databaseHelper.showAnswersToManage(questions.getIDs().get(pseud_id));
-		answers.print();
+		QuestionThread thread = session.viewThread(questions.getID(pseud_id));
+		if (thread == null) {
+			System.out.println("That question could not be loaded. Please try again.");
+			return;
+		}
+		AnswerList answers = thread.getAnswers();
+		ConsoleRenderer.console().page(thread, scnr);
 		System.out.println("Enter the # corresponding to the answer you want to mark as solution: ");
 		int answer_pseud_id = scnr.nextInt();
 		scnr.nextLine();
-		databaseHelper.markAnswerAsSolution(answers.getIDs().get(answer_pseud_id));
-		databaseHelper.markQuestionAsResolved(questions.getIDs().get(pseud_id));
-		System.out.println("Answer successfully marked as solution. Your question is now marked as resolved.");
-		mainMenu(scnr);
+		if (session.resolveQuestion(questions.getID(pseud_id), answers.getID(answer_pseud_id))) {
+			System.out.println("Answer successfully marked as solution. Your question is now marked as resolved.");
+		} else {
+			System.out.println("That answer is no longer under your question, or the question was deleted. Please try again.");
+		}
 	}
 	
-	public void deleteQuestion(Scanner scnr) {
-		QuestionList questions = databaseHelper.showQuestionsToManage(currentUser);
-		questions.print();
+	public void deleteQuestion(Scanner scnr) throws SQLException {
+		QuestionList questions = session.myQuestions();
+		ConsoleRenderer.console().page(questions, scnr);
 		System.out.println("Enter the # corresponding to the question you want to delete: ");
 		int pseud_id = scnr.nextInt();
 		scnr.nextLine();
@@ -232,11 +294,10 @@ public class Menu {
 		int input = scnr.nextInt();
 		scnr.nextLine();
 		if (input == 1) {
-			databaseHelper.deleteQuestion(questions.getIDs().get(pseud_id));
+			session.deleteQuestion(questions.getID(pseud_id));
 			System.out.println("Question successfully deleted.");
 		} else if (input == 2) {
 			System.out.println("Your question has not been deleted.");
 		}
-		mainMenu(scnr);
 	}
 }
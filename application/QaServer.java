@@ -0,0 +1,426 @@
+package application;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import databasePart1.AsyncDatabaseHelper;
+import databasePart1.DatabaseHelper;
+import databasePart1.Json;
+import databasePart1.TaskExecutors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import static application.Session.await;
+
+/**
+ * The QaServer class serves the operations of the console Menu as JSON over HTTP, so that
+ * many users can share one DatabaseHelper. Each request runs on its own (virtual) thread,
+ * and database calls go through an AsyncDatabaseHelper that bounds them to the pool size.
+ *
+ * Endpoints:
+ *   GET    /questions[?after=ID|before=ID][&limit=N]   one page of questions, the first by default
+ *   POST   /questions                  {"title", "text"}
+ *   GET    /questions/{id}[?limit=N][&offset=N]   the question with its answers, solutions first
+ *   PUT    /questions/{id}             {"title", "text"}
+ *   DELETE /questions/{id}
+ *   POST   /questions/{id}/resolve[?answer=ID]   409 if the answer is not under the question
+ *   GET    /questions/{id}/answers
+ *   POST   /questions/{id}/answers     {"text"}
+ *   PUT    /answers/{id}               {"text"}
+ *   DELETE /answers/{id}
+ *   POST   /answers/{id}/solution
+ *   GET    /search?q=QUERY[&k=N]
+ *   GET    /users/{name}/questions
+ *   GET    /users/{name}/answers
+ *
+ * Every write names the caller in the X-User header, and new questions and answers are posted
+ * as that user; a body "postedBy" naming anyone else is refused with 403. Changing a question
+ * or answer, resolving a question and marking a solution are checked the same way: as in the
+ * Menu, which only offers users their own posts, they are
+ * refused with 403 unless the caller posted the question or answer being changed, or for
+ * resolving and marking a solution, the question. A known path used with the wrong method
+ * is answered with 405.
+ */
+public class QaServer {
+
+	static final int DEFAULT_PORT = 8080;
+	// Pending connections the listening socket queues before refusing new clients
+	static final int BACKLOG = 1024;
+	static final int MAX_PAGE_SIZE = 100;
+	static final String USER_HEADER = "X-User";
+
+	/**
+	 * An error answered with the given HTTP status and message.
+	 */
+	static class HttpError extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+		final String allow; // The methods a 405 lists in its Allow header
+
+		HttpError(int status, String message) {
+			this(status, message, null);
+		}
+
+		HttpError(int status, String message, String allow) {
+			super(message);
+			this.status = status;
+			this.allow = allow;
+		}
+	}
+
+	private final AsyncDatabaseHelper db;
+	private final ExecutorService executor;
+	private final HttpServer server;
+
+	public QaServer(DatabaseHelper databaseHelper, int port) throws IOException {
+		this.db = new AsyncDatabaseHelper(databaseHelper, databaseHelper.getMaxPoolSize());
+		this.executor = TaskExecutors.newPerTaskExecutor("http");
+		this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+
+	public void start() {
+		server.start();
+		System.out.println("Serving on port " + getPort());
+	}
+
+	public int getPort() { return server.getAddress().getPort(); }
+
+	// Stop accepting requests, waiting up to delaySeconds for running ones to finish
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+		db.close();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			int status = 200;
+			String body;
+			try {
+				body = route(exchange.getRequestMethod(), pathOf(exchange), queryOf(exchange), exchange);
+			} catch (HttpError e) {
+				status = e.status;
+				body = error(e.getMessage());
+				if (e.allow != null) {
+					exchange.getResponseHeaders().set("Allow", e.allow);
+				}
+			} catch (IllegalArgumentException e) {
+				status = 400;
+				body = error(e.getMessage());
+			} catch (SQLException e) {
+				status = 500;
+				body = error(e.getMessage());
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				status = 500;
+				body = error("Internal server error");
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private String route(String method, String[] path, Map<String, String> query, HttpExchange exchange)
+			throws HttpError, SQLException, IOException {
+		if (path.length >= 1 && path[0].equals("questions")) {
+			if (path.length == 1) {
+				switch (method) {
+				case "GET": return questions(listQuestions(query));
+				case "POST":
+					Map<String, Object> json = readBody(exchange);
+					Question question = new Question(required(json, "title"), required(json, "text"), poster(exchange, json));
+					return created(await(db.postQuestion(question)));
+				}
+				throw notAllowed(method, "GET, POST");
+			}
+			int qid = parseId(path[1]);
+			if (path.length == 2) {
+				switch (method) {
+				case "GET": return thread(loadThread(qid, query));
+				case "PUT":
+					requireAuthor(exchange, questionAuthor(qid));
+					Map<String, Object> json = readBody(exchange);
+					return found(await(db.updateQuestion(qid, required(json, "title"), required(json, "text"))));
+				case "DELETE":
+					requireAuthor(exchange, questionAuthor(qid));
+					return found(await(db.deleteQuestion(qid)));
+				}
+				throw notAllowed(method, "GET, PUT, DELETE");
+			} else if (path.length == 3 && path[2].equals("resolve")) {
+				if (!method.equals("POST")) {
+					throw notAllowed(method, "POST");
+				}
+				requireAuthor(exchange, questionAuthor(qid));
+				if (query.containsKey("answer")) {
+					DatabaseHelper.ResolveResult result = await(db.resolveWithSolution(qid, parseId(query.get("answer"))));
+					if (result == DatabaseHelper.ResolveResult.NOT_FOUND) {
+						throw new HttpError(404, "Not found");
+					} else if (result == DatabaseHelper.ResolveResult.CONFLICT) {
+						throw new HttpError(409, "Answer is not under question " + qid);
+					}
+					return found(true);
+				}
+				return found(await(db.markQuestionAsResolved(qid)));
+			} else if (path.length == 3 && path[2].equals("answers")) {
+				switch (method) {
+				case "GET": return answers(await(db.viewAnswersToQuestion(qid)));
+				case "POST":
+					Map<String, Object> json = readBody(exchange);
+					return created(await(db.postAnswer(new Answer(required(json, "text"), poster(exchange, json), qid))));
+				}
+				throw notAllowed(method, "GET, POST");
+			}
+		} else if (path.length == 2 && path[0].equals("answers")) {
+			int aid = parseId(path[1]);
+			switch (method) {
+			case "PUT":
+				requireAuthor(exchange, findAnswer(aid).getPostedBy());
+				return found(await(db.updateAnswer(aid, required(readBody(exchange), "text"))));
+			case "DELETE":
+				requireAuthor(exchange, findAnswer(aid).getPostedBy());
+				return found(await(db.deleteAnswer(aid)));
+			}
+			throw notAllowed(method, "PUT, DELETE");
+		} else if (path.length == 3 && path[0].equals("answers") && path[2].equals("solution")) {
+			if (!method.equals("POST")) {
+				throw notAllowed(method, "POST");
+			}
+			int aid = parseId(path[1]);
+			requireAuthor(exchange, questionAuthor(findAnswer(aid).getUnderQuestion()));
+			return found(await(db.markAnswerAsSolution(aid)));
+		} else if (path.length == 1 && path[0].equals("search")) {
+			if (!method.equals("GET")) {
+				throw notAllowed(method, "GET");
+			}
+			String q = query.get("q");
+			if (q == null || q.isBlank()) {
+				throw new IllegalArgumentException("Missing query parameter q");
+			}
+			return questions(await(db.searchQuestions(q, intParam(query, "k", 20, MAX_PAGE_SIZE))));
+		} else if (path.length == 3 && path[0].equals("users")
+				&& (path[2].equals("questions") || path[2].equals("answers"))) {
+			if (!method.equals("GET")) {
+				throw notAllowed(method, "GET");
+			}
+			if (path[2].equals("questions")) {
+				return questions(await(db.showQuestionsToManage(path[1])));
+			}
+			return answers(await(db.showAnswersToManage(path[1])));
+		}
+		throw new HttpError(404, "No such endpoint: " + method + " /" + String.join("/", path));
+	}
+
+	// The first page of questions, or the keyset page after or before a given id
+	private QuestionList listQuestions(Map<String, String> query) throws SQLException {
+		int limit = intParam(query, "limit", Menu.QUESTIONS_PER_PAGE, MAX_PAGE_SIZE);
+		if (query.containsKey("before")) {
+			return await(db.listQuestionsBefore(parseId(query.get("before")), limit));
+		}
+		return await(db.listQuestionsAfter(query.containsKey("after") ? parseId(query.get("after")) : 0, limit));
+	}
+
+	// Only the user who posted a question or answer may change it, as in the console Menu
+	private static void requireAuthor(HttpExchange exchange, String author) throws HttpError {
+		String user = exchange.getRequestHeaders().getFirst(USER_HEADER);
+		if (user == null || !user.equals(author)) {
+			throw new HttpError(403, "Only " + author + " may change this");
+		}
+	}
+
+	// The caller named in X-User, who posts the new question or answer; a body postedBy must match it
+	private static String poster(HttpExchange exchange, Map<String, Object> json) throws HttpError {
+		String user = exchange.getRequestHeaders().getFirst(USER_HEADER);
+		if (user == null || user.isBlank()) {
+			throw new HttpError(403, "Name the author in the " + USER_HEADER + " header");
+		}
+		Object postedBy = json.get("postedBy");
+		if (postedBy != null && !user.equals(postedBy)) {
+			throw new HttpError(403, "Cannot post as " + postedBy);
+		}
+		return user;
+	}
+
+	private String questionAuthor(int qid) throws SQLException, HttpError {
+		QuestionThread thread = await(db.loadThread(qid, 0, 0));
+		if (thread == null) {
+			throw new HttpError(404, "Not found");
+		}
+		return thread.getQuestion().getPostedBy();
+	}
+
+	private Answer findAnswer(int aid) throws SQLException, HttpError {
+		Answer answer = await(db.findAnswer(aid));
+		if (answer == null) {
+			throw new HttpError(404, "Not found");
+		}
+		return answer;
+	}
+
+	// A question with all of its answers, or one page of them when limit or offset is given
+	private QuestionThread loadThread(int qid, Map<String, String> query) throws SQLException, HttpError {
+		int limit = query.containsKey("limit") || query.containsKey("offset")
+				? intParam(query, "limit", MAX_PAGE_SIZE, MAX_PAGE_SIZE) : DatabaseHelper.ALL_ANSWERS;
+		int offset = query.containsKey("offset") ? parseId(query.get("offset")) : 0;
+		if (offset < 0) {
+			throw new IllegalArgumentException("offset must not be negative");
+		}
+		QuestionThread thread = await(db.loadThread(qid, limit, offset));
+		if (thread == null) {
+			throw new HttpError(404, "Not found");
+		}
+		return thread;
+	}
+
+	private static String[] pathOf(HttpExchange exchange) {
+		String path = exchange.getRequestURI().getPath();
+		String[] parts = path.replaceAll("^/+|/+$", "").split("/+");
+		for (int i = 0; i < parts.length; i++) {
+			parts[i] = URLDecoder.decode(parts[i], StandardCharsets.UTF_8);
+		}
+		return parts.length == 1 && parts[0].isEmpty() ? new String[0] : parts;
+	}
+
+	private static Map<String, String> queryOf(HttpExchange exchange) {
+		Map<String, String> params = new HashMap<String, String>();
+		String raw = exchange.getRequestURI().getRawQuery();
+		if (raw == null) {
+			return params;
+		}
+		for (String pair : raw.split("&")) {
+			int eq = pair.indexOf('=');
+			String key = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return params;
+	}
+
+	private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			return Json.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String required(Map<String, Object> json, String key) {
+		Object value = json.get(key);
+		if (!(value instanceof String) || ((String) value).isBlank()) {
+			throw new IllegalArgumentException("Missing field " + key);
+		}
+		return (String) value;
+	}
+
+	private static int parseId(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid id " + value);
+		}
+	}
+
+	private static int intParam(Map<String, String> query, String key, int defaultValue, int max) {
+		String value = query.get(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		int n = parseId(value);
+		if (n < 1 || n > max) {
+			throw new IllegalArgumentException(key + " must be between 1 and " + max);
+		}
+		return n;
+	}
+
+	private static HttpError notAllowed(String method, String allow) {
+		return new HttpError(405, "Method " + method + " not allowed; use " + allow, allow);
+	}
+
+	// Response bodies
+	private static String created(int id) {
+		return "{\"id\":" + id + "}";
+	}
+
+	private static String found(boolean found) throws HttpError {
+		if (!found) {
+			throw new HttpError(404, "Not found");
+		}
+		return "{\"ok\":true}";
+	}
+
+	private static String error(String message) {
+		return Json.quote(new StringBuilder("{\"error\":"), message).append('}').toString();
+	}
+
+	private static String questions(QuestionList list) throws SQLException {
+		if (list == null) {
+			throw new SQLException("Failed to load questions");
+		}
+		StringBuilder sb = new StringBuilder("{\"questions\":[");
+		List<Question> questions = list.getQuestions();
+		for (int i = 0; i < questions.size(); i++) {
+			question(sb.append(i == 0 ? "" : ","), questions.get(i));
+		}
+		sb.append(']');
+		if (list.getLastId() > 0) {
+			sb.append(",\"firstId\":").append(list.getFirstId()).append(",\"lastId\":").append(list.getLastId())
+					.append(",\"hasPreviousPage\":").append(list.hasPreviousPage())
+					.append(",\"hasNextPage\":").append(list.hasNextPage());
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String answers(AnswerList list) throws SQLException {
+		if (list == null) {
+			throw new SQLException("Failed to load answers");
+		}
+		return answers(new StringBuilder("{"), list).append('}').toString();
+	}
+
+	private static StringBuilder answers(StringBuilder sb, AnswerList list) {
+		sb.append("\"answers\":[");
+		List<Answer> answers = list.getAnswers();
+		for (int i = 0; i < answers.size(); i++) {
+			Answer a = answers.get(i);
+			sb.append(i == 0 ? "{" : ",{").append("\"id\":").append(a.getId()).append(",\"text\":");
+			Json.quote(sb, a.getText()).append(",\"postedBy\":");
+			Json.quote(sb, a.getPostedBy()).append(",\"underQuestion\":").append(a.getUnderQuestion())
+					.append(",\"isSolution\":").append(a.getIsSolution()).append('}');
+		}
+		return sb.append(']');
+	}
+
+	private static StringBuilder question(StringBuilder sb, Question q) {
+		sb.append("{\"id\":").append(q.getId()).append(",\"title\":");
+		Json.quote(sb, q.getTitle()).append(",\"text\":");
+		Json.quote(sb, q.getText()).append(",\"postedBy\":");
+		Json.quote(sb, q.getPostedBy()).append(",\"resolved\":").append(q.getResolved())
+				.append(",\"answerCount\":").append(q.getAnswerCount())
+				.append(",\"solutionCount\":").append(q.getSolutionCount());
+		if (q.getLastActivity() != null) {
+			Json.quote(sb.append(",\"lastActivity\":"), q.getLastActivity().toString());
+		}
+		return sb.append('}');
+	}
+
+	private static String thread(QuestionThread thread) {
+		StringBuilder sb = question(new StringBuilder("{\"question\":"), thread.getQuestion()).append(',');
+		return answers(sb, thread.getAnswers()).append(",\"offset\":").append(thread.getOffset())
+				.append(",\"hasMoreAnswers\":").append(thread.hasMoreAnswers()).append('}').toString();
+	}
+}
@@ -1,25 +1,50 @@
 package application;
 
+import java.time.LocalDateTime;
+
 /**
  * The Question class represents a question entity in the system.
  * It contains the question's attributes such as its
  * title, body text, and whether or not it has been resolved.
+ * Questions read from the database also carry their database ID, the number of answers
+ * and solutions posted under them, and when they were last posted to or answered.
  */
 public class Question {
+	private int id;
 	private String title;
     private String text;
     private String postedBy;
     private boolean resolved;
+    private int answerCount;
+    private int solutionCount;
+    private LocalDateTime lastActivity;
     
-    // Question constructor
+    // Question constructors
     public Question(String title, String text, String postedBy) {
         this.title = title;
         this.text = text;
         this.postedBy = postedBy;
         this.resolved = false;
     }
+    public Question(int id, String title, String text, String postedBy, boolean resolved) {
+        this.id = id;
+        this.title = title;
+        this.text = text;
+        this.postedBy = postedBy;
+        this.resolved = resolved;
+    }
+    public Question(int id, String title, String text, String postedBy, boolean resolved,
+    		int answerCount, int solutionCount, LocalDateTime lastActivity) {
+        this(id, title, text, postedBy, resolved);
+        this.answerCount = answerCount;
+        this.solutionCount = solutionCount;
+        this.lastActivity = lastActivity;
+    }
     
     // Question edit actions
+    public void setId(int id) {
+    	this.id = id;
+    }
     public void setTitle(String title) {
     	this.title = title;
     }
@@ -34,8 +59,12 @@ public class Question {
     */
     
     // Question getters
+    public int getId() { return id; }
     public String getTitle() { return title; }
     public String getText() { return text; }
     public String getPostedBy() { return postedBy; }
     public boolean getResolved() { return resolved; }
+    public int getAnswerCount() { return answerCount; }
+    public int getSolutionCount() { return solutionCount; }
+    public LocalDateTime getLastActivity() { return lastActivity; }
 }
@@ -1,39 +1,66 @@
 package application;
+import databasePart1.SearchIndex;
+
 import java.util.ArrayList;
+import java.util.Objects;
+import java.util.function.Predicate;
 
 /**
  * The QuestionList class represents a list of questions in the system.
- * It contains an ArrayList of question text as well as the
- * questions' IDs in the SQL database (If they are not consecutive).
+ * It contains an ArrayList of questions, which carry their own IDs in the SQL database.
+ * Lists the user can manage are numbered by position instead of by database ID.
  */
 public class QuestionList {
-	private ArrayList<String> questions;
-	private ArrayList<Integer> db_ids;
+	private ArrayList<Question> questions;
+	private boolean indexed;
+	
+	// Keyset pagination cursors, set when the list is one page of questions
+	private int firstId;
+	private int lastId;
+	private boolean hasPreviousPage;
+	private boolean hasNextPage;
 	
     // QuestionList constructors
-    public QuestionList(ArrayList<String> questions) {
+    public QuestionList(ArrayList<Question> questions) {
     	this.questions = questions;
     }
-    public QuestionList(ArrayList<String> questions, ArrayList<Integer> db_ids) {
+    public QuestionList(ArrayList<Question> questions, boolean indexed) {
     	this.questions = questions;
-    	this.db_ids = db_ids;
+    	this.indexed = indexed;
+    }
+    
+    // Record where this page sits among all questions
+    public void setPage(int firstId, int lastId, boolean hasPreviousPage, boolean hasNextPage) {
+    	this.firstId = firstId;
+    	this.lastId = lastId;
+    	this.hasPreviousPage = hasPreviousPage;
+    	this.hasNextPage = hasNextPage;
     }
     
     // QuestionList print function and getters
     public void print() {
-    	for (int i = 0; i < questions.size(); i++) {
-    		System.out.print(questions.get(i));
-    	}
+    	ConsoleRenderer.console().print(this);
     }
-    public ArrayList<String> getQuestions() { return questions; }
-    public ArrayList<Integer> getIDs() { return db_ids; }
+    public ArrayList<Question> getQuestions() { return questions; }
+    public boolean isIndexed() { return indexed; }
+    public int getFirstId() { return firstId; }
+    public int getLastId() { return lastId; }
+    public boolean hasPreviousPage() { return hasPreviousPage; }
+    public boolean hasNextPage() { return hasNextPage; }
+    
+    // Get the database ID of the question shown as # index (numbered from 1)
+    public int getID(int index) { return questions.get(index - 1).getId(); }
     
-    // QuestionList search function
+    // Keep only the questions in this list that match the query, with the same terms, AND/OR
+    // groups and prefix* matching as DatabaseHelper.searchQuestions, which should be used to
+    // search every question. Each search replaces the list, so an index built over it would be
+    // used once; a linear pass over the questions already in memory is cheaper.
     public void search(String filter) {
-    	ArrayList<String> updated_list = new ArrayList<String>();
-    	for (int i = 0; i < questions.size(); i++) {
-    		if (questions.get(i).contains(filter)) {
-    			updated_list.add(questions.get(i));
+    	Predicate<String> matcher = SearchIndex.matcher(filter);
+    	ArrayList<Question> updated_list = new ArrayList<Question>();
+    	for (Question q : questions) {
+    		if (matcher.test(Objects.toString(q.getTitle(), "") + " " + Objects.toString(q.getText(), ""))) {
+    			updated_list.add(q);
     		}
     	}
     	this.questions = updated_list;
@@ -0,0 +1,30 @@
+package application;
+
+/**
+ * The QuestionThread class represents a question together with its answers, solutions first,
+ * as loaded in a single query. The answers may be one page of the thread, in which case the
+ * offset of the first answer and whether more follow are recorded as well.
+ */
+public class QuestionThread {
+	private final Question question;
+	private final AnswerList answers;
+	private final int offset;
+	private final boolean hasMoreAnswers;
+
+    // QuestionThread constructor
+    public QuestionThread(Question question, AnswerList answers, int offset, boolean hasMoreAnswers) {
+    	this.question = question;
+    	this.answers = answers;
+    	this.offset = offset;
+    	this.hasMoreAnswers = hasMoreAnswers;
+    }
+
+    // QuestionThread print function and getters
+    public void print() {
+    	ConsoleRenderer.console().print(this);
+    }
+    public Question getQuestion() { return question; }
+    public AnswerList getAnswers() { return answers; }
+    public int getOffset() { return offset; }
+    public boolean hasMoreAnswers() { return hasMoreAnswers; }
+}
@@ -0,0 +1,95 @@
+package application;
+
+import databasePart1.DatabaseHelper;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The Session class carries out the operations of one signed-in user against the database.
+ * Menu prompts for their input and BatchRunner reads it from a script, and both run the
+ * same operations through this class. Writes wait until they are committed, so a failure
+ * is reported to the caller instead of being lost.
+ */
+public class Session {
+	private final DatabaseHelper databaseHelper;
+	private final String currentUser;
+
+	public Session(DatabaseHelper databaseHelper, String currentUser) {
+		this.databaseHelper = databaseHelper;
+		this.currentUser = currentUser;
+	}
+
+	public String getCurrentUser() { return currentUser; }
+
+	// Questions
+	public int postQuestion(String title, String text) throws SQLException {
+		return await(databaseHelper.postQuestion(new Question(title, text, currentUser)));
+	}
+	public QuestionList firstPage(int pageSize) {
+		return databaseHelper.listQuestionsAfter(0, pageSize);
+	}
+	public QuestionList nextPage(QuestionList page, int pageSize) {
+		return databaseHelper.listQuestionsAfter(page.getLastId(), pageSize);
+	}
+	public QuestionList previousPage(QuestionList page, int pageSize) {
+		return databaseHelper.listQuestionsBefore(page.getFirstId(), pageSize);
+	}
+	public QuestionList search(String query) {
+		return databaseHelper.searchQuestions(query);
+	}
+	public QuestionList myQuestions() {
+		return databaseHelper.showQuestionsToManage(currentUser);
+	}
+	public boolean updateQuestion(int qid, String title, String text) throws SQLException {
+		return await(databaseHelper.updateQuestion(qid, title, text));
+	}
+	public boolean deleteQuestion(int qid) throws SQLException {
+		return await(databaseHelper.deleteQuestion(qid));
+	}
+
+	// Mark an answer as the solution and its question as resolved in one commit;
+	// false if the answer is not under that question or the question was deleted
+	public boolean resolveQuestion(int qid, int aid) throws SQLException {
+		return await(databaseHelper.resolveWithSolution(qid, aid)) == DatabaseHelper.ResolveResult.RESOLVED;
+	}
+
+	// Answers
+	public int postAnswer(int qid, String text) throws SQLException {
+		return await(databaseHelper.postAnswer(new Answer(text, currentUser, qid)));
+	}
+	// The question with all of its answers, or null if there is no such question
+	public QuestionThread viewThread(int qid) {
+		return databaseHelper.loadThread(qid);
+	}
+	public AnswerList myAnswers() {
+		return databaseHelper.showAnswersToManage(currentUser);
+	}
+	public boolean updateAnswer(int aid, String text) throws SQLException {
+		return await(databaseHelper.updateAnswer(aid, text));
+	}
+	public boolean deleteAnswer(int aid) throws SQLException {
+		return await(databaseHelper.deleteAnswer(aid));
+	}
+
+	// Wait for a database call to complete, unwrapping its failure
+	static <T> T await(CompletableFuture<T> future) throws SQLException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for the database", e);
+		} catch (ExecutionException | CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SQLException(cause);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package benchmark;
+
+import application.*;
+import databasePart1.DatabaseHelper;
+import databasePart1.StorageProfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The DatabaseBenchmark class measures the latency, throughput and allocation rate of the
+ * DatabaseHelper operations and of QuestionList.search, so that performance changes can be
+ * compared against a baseline. It needs nothing beyond the JDK and the H2 driver.
+ *
+ * Every combination of storage (in-memory or file-backed H2), table size and answers per
+ * question gets a freshly loaded database. Each operation is then warmed up and measured for
+ * a fixed time on a single thread; allocation is read from the thread's allocation counter.
+ * The write operations run last, so every read is measured against exactly the loaded rows.
+ * The answer thread cache is disabled so that viewAnswersToQuestion measures the database.
+ *
+ * Usage: DatabaseBenchmark [--storage mem,file] [--rows 1000,10000,100000,1000000]
+ *                          [--answers 1,10] [--warmup ms] [--measure ms] [--only name,...]
+ */
+public class DatabaseBenchmark {
+
+	static final int USERS = 100;
+	static final String[] WORDS = {"sql", "join", "index", "java", "thread", "pool", "query", "cache", "lock", "table"};
+
+	/**
+	 * One benchmarked operation; the returned value is consumed so the work cannot be optimized away.
+	 */
+	interface Operation {
+		int run(Random random) throws SQLException;
+	}
+
+	/**
+	 * The measurements of one operation.
+	 */
+	static class Result {
+		long operations;
+		long nanos;
+		long allocatedBytes;
+
+		double opsPerSecond() { return operations * 1e9 / nanos; }
+		double meanMicros() { return nanos / 1e3 / operations; }
+		double bytesPerOperation() { return allocatedBytes < 0 ? Double.NaN : (double) allocatedBytes / operations; }
+	}
+
+	private static volatile long sink;
+
+	private final long warmupMillis;
+	private final long measureMillis;
+	private final com.sun.management.ThreadMXBean threads;
+
+	DatabaseBenchmark(long warmupMillis, long measureMillis) {
+		this.warmupMillis = warmupMillis;
+		this.measureMillis = measureMillis;
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		this.threads = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+	}
+
+	// Run an operation repeatedly for the warm-up time, then measure it for the measurement time
+	Result measure(Operation operation) throws SQLException {
+		Random random = new Random(42);
+		loop(operation, random, warmupMillis);
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threads == null ? -1 : threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		Result result = new Result();
+		result.operations = loop(operation, random, measureMillis);
+		result.nanos = System.nanoTime() - start;
+		result.allocatedBytes = allocatedBefore < 0 ? -1 : threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		return result;
+	}
+
+	private static long loop(Operation operation, Random random, long millis) throws SQLException {
+		long deadline = System.nanoTime() + millis * 1_000_000L;
+		long operations = 0;
+		long consumed = 0;
+		do {
+			consumed += operation.run(random);
+			operations++;
+		} while (System.nanoTime() < deadline);
+		sink += consumed;
+		return operations;
+	}
+
+	// The benchmarked operations against a database holding the given number of questions
+	static Map<String, Operation> operations(DatabaseHelper db, int rows) {
+		Map<String, Operation> ops = new LinkedHashMap<String, Operation>();
+		ops.put("listAllQuestions", r -> db.listAllQuestions().getQuestions().size());
+		ops.put("viewAnswersToQuestion", r -> db.viewAnswersToQuestion(1 + r.nextInt(rows)).getAnswers().size());
+		ops.put("showAnswersToManage(user)", r -> db.showAnswersToManage(user(r)).getAnswers().size());
+		ops.put("showAnswersToManage(qid)", r -> db.showAnswersToManage(1 + r.nextInt(rows)).getAnswers().size());
+		ops.put("showQuestionsToManage", r -> db.showQuestionsToManage(user(r)).getQuestions().size());
+		ops.put("searchQuestions", r -> db.searchQuestions(word(r)).getQuestions().size());
+		ArrayList<Question> all = new ArrayList<Question>();
+		ops.put("QuestionList.search", r -> {
+			if (all.isEmpty()) {
+				all.addAll(db.listAllQuestions().getQuestions());
+			}
+			QuestionList list = new QuestionList(all);
+			list.search(word(r));
+			return list.getQuestions().size();
+		});
+		// The writes grow the tables, so they run after every read has been measured
+		ops.put("postQuestion", r -> db.postQuestion(new Question("Bench " + word(r), "Body " + word(r), user(r))).join());
+		ops.put("postAnswer", r -> db.postAnswer(new Answer("Answer " + word(r), user(r), 1 + r.nextInt(rows))).join());
+		return ops;
+	}
+
+	static String word(Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	static String user(Random random) {
+		return "user" + random.nextInt(USERS);
+	}
+
+	// Fill an empty database with questions and answers through the batched insert API
+	static void load(DatabaseHelper db, int rows, int answersPerQuestion) throws SQLException {
+		Random random = new Random(7);
+		int chunk = 10_000;
+		for (int first = 0; first < rows; first += chunk) {
+			List<Question> questions = new ArrayList<Question>();
+			for (int i = first; i < Math.min(rows, first + chunk); i++) {
+				questions.add(new Question("Question about " + word(random) + " " + word(random),
+						"How do I use " + word(random) + " with " + word(random) + "?", user(random)));
+			}
+			int[] ids = db.postQuestions(questions);
+			List<Answer> answers = new ArrayList<Answer>();
+			for (int id : ids) {
+				for (int a = 0; a < answersPerQuestion; a++) {
+					answers.add(new Answer("Try " + word(random) + " " + word(random), user(random), id));
+				}
+			}
+			db.postAnswers(answers);
+		}
+	}
+
+	void run(List<String> storages, List<Integer> rowCounts, List<Integer> answerCounts, List<String> only)
+			throws SQLException, IOException {
+		System.out.println(String.format("%-7s %8s %8s  %-26s %12s %12s %14s", "storage", "rows", "answers",
+				"benchmark", "ops/s", "mean us", "alloc B/op"));
+		for (String storage : storages) {
+			for (int rows : rowCounts) {
+				for (int answersPerQuestion : answerCounts) {
+					File dir = null;
+					StorageProfile profile;
+					if (storage.equals("file")) {
+						dir = Files.createTempDirectory("bench").toFile();
+						profile = StorageProfile.file(new File(dir, "bench").getAbsolutePath());
+					} else {
+						profile = StorageProfile.memory();
+					}
+					DatabaseHelper db = new DatabaseHelper(profile);
+					db.configureAnswerCache(0, 0);
+					db.connectToDatabase();
+					try {
+						load(db, rows, answersPerQuestion);
+						for (Map.Entry<String, Operation> op : operations(db, rows).entrySet()) {
+							if (!only.isEmpty() && !only.contains(op.getKey())) {
+								continue;
+							}
+							Result r = measure(op.getValue());
+							System.out.println(String.format("%-7s %8d %8d  %-26s %12.1f %12.2f %14.0f", storage, rows,
+									answersPerQuestion, op.getKey(), r.opsPerSecond(), r.meanMicros(), r.bytesPerOperation()));
+						}
+					} finally {
+						db.closeConnection();
+						if (dir != null) {
+							for (File f : dir.listFiles()) {
+								f.delete();
+							}
+							dir.delete();
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static List<String> strings(String value) {
+		List<String> list = new ArrayList<String>();
+		for (String s : value.split(",")) {
+			if (!s.isBlank()) {
+				list.add(s.trim());
+			}
+		}
+		return list;
+	}
+
+	private static List<Integer> ints(String value) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (String s : strings(value)) {
+			list.add(Integer.parseInt(s));
+		}
+		return list;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		options.put("--storage", "mem,file");
+		options.put("--rows", "1000,10000,100000,1000000");
+		options.put("--answers", "1,10");
+		options.put("--warmup", "1000");
+		options.put("--measure", "2000");
+		options.put("--only", "");
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!options.containsKey(args[i])) {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+			options.put(args[i], args[i + 1]);
+		}
+		new DatabaseBenchmark(Long.parseLong(options.get("--warmup")), Long.parseLong(options.get("--measure")))
+				.run(strings(options.get("--storage")), ints(options.get("--rows")), ints(options.get("--answers")),
+						strings(options.get("--only")));
+	}
+}
@@ -0,0 +1,317 @@
+package benchmark;
+
+import application.*;
+import databasePart1.DatabaseHelper;
+import databasePart1.LatencyHistogram;
+import databasePart1.StorageProfile;
+import databasePart1.TaskExecutors;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LoadGenerator class drives a DatabaseHelper with many simulated users performing a
+ * weighted mix of operations, and reports throughput and latency percentiles per operation.
+ *
+ * In the closed model each of N users runs one operation after another, optionally pausing
+ * between them, so load drops as the system slows down. In the open model operations arrive
+ * at a fixed rate whatever the system does, and each one's latency is measured from when it
+ * was due to start, so queueing delay is not hidden (no coordinated omission). A list of user
+ * counts or rates runs one level after another, to find where latency starts to climb.
+ *
+ * Usage: LoadGenerator [--model closed|open] [--users 1,4,16,64] [--rate 1000,5000]
+ *                      [--mix view=80,post=10,search=5,resolve=5] [--duration ms] [--warmup ms]
+ *                      [--think ms] [--pool n] [--rows n] [--answers n] [--storage mem|file:PATH|jdbc-url]
+ */
+public class LoadGenerator {
+
+	// Open model: operations allowed in flight before new arrivals are dropped
+	static final int MAX_IN_FLIGHT = 100_000;
+
+	static final String[] OPERATIONS = {"view", "post", "search", "resolve", "ask", "list"};
+
+	/**
+	 * The latencies and failures of one operation.
+	 */
+	static class OperationStats {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LongAdder errors = new LongAdder();
+	}
+
+	private final DatabaseHelper db;
+	private final int questions;
+	private final String[] mixNames;
+	private final int[] mixWeights;
+	private final int totalWeight;
+	private final Map<String, OperationStats> stats = new LinkedHashMap<String, OperationStats>();
+	private volatile boolean recording = false;
+
+	LoadGenerator(DatabaseHelper db, int questions, Map<String, Integer> mix) {
+		this.db = db;
+		this.questions = questions;
+		this.mixNames = mix.keySet().toArray(new String[0]);
+		this.mixWeights = new int[mixNames.length];
+		int sum = 0;
+		for (int i = 0; i < mixNames.length; i++) {
+			sum += mix.get(mixNames[i]);
+			mixWeights[i] = sum;
+			stats.put(mixNames[i], new OperationStats());
+		}
+		this.totalWeight = sum;
+	}
+
+	private String pick(ThreadLocalRandom random) {
+		int roll = random.nextInt(totalWeight);
+		for (int i = 0; i < mixNames.length; i++) {
+			if (roll < mixWeights[i]) {
+				return mixNames[i];
+			}
+		}
+		return mixNames[mixNames.length - 1];
+	}
+
+	// Run one operation as the given user
+	private void execute(String operation, Session session, ThreadLocalRandom random) throws SQLException {
+		int qid = 1 + random.nextInt(questions);
+		switch (operation) {
+		case "view":
+			session.viewThread(qid);
+			break;
+		case "post":
+			session.postAnswer(qid, "Load answer " + DatabaseBenchmark.WORDS[random.nextInt(DatabaseBenchmark.WORDS.length)]);
+			break;
+		case "search":
+			session.search(DatabaseBenchmark.WORDS[random.nextInt(DatabaseBenchmark.WORDS.length)]);
+			break;
+		case "resolve":
+			QuestionThread thread = session.viewThread(qid);
+			List<Answer> answers = thread == null ? List.of() : thread.getAnswers().getAnswers();
+			if (!answers.isEmpty()) {
+				session.resolveQuestion(qid, answers.get(random.nextInt(answers.size())).getId());
+			}
+			break;
+		case "ask":
+			session.postQuestion("Load question", "Asked under load");
+			break;
+		case "list":
+			session.firstPage(Menu.QUESTIONS_PER_PAGE);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown operation " + operation);
+		}
+	}
+
+	private void timed(Session session, long dueNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String operation = pick(random);
+		OperationStats s = stats.get(operation);
+		try {
+			execute(operation, session, random);
+		} catch (SQLException | RuntimeException e) {
+			if (recording) {
+				s.errors.increment();
+			}
+		}
+		if (recording) {
+			s.latency.record(System.nanoTime() - dueNanos);
+		}
+	}
+
+	// Closed model: each user thread runs operations back to back, with an optional think time
+	void runClosed(int users, long warmupMillis, long durationMillis, long thinkMillis) throws InterruptedException {
+		long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupMillis + durationMillis);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int u = 0; u < users; u++) {
+			Session session = new Session(db, "load" + u);
+			Thread t = new Thread(() -> {
+				while (System.nanoTime() < end) {
+					timed(session, System.nanoTime());
+					if (thinkMillis > 0) {
+						try {
+							Thread.sleep(thinkMillis);
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}, "load-user-" + u);
+			t.setDaemon(true);
+			threads.add(t);
+		}
+		measure(warmupMillis, durationMillis, () -> {
+			for (Thread t : threads) {
+				t.start();
+			}
+		});
+		for (Thread t : threads) {
+			t.join();
+		}
+	}
+
+	// Open model: operations arrive at a fixed rate from users picked at random
+	long runOpen(int ratePerSecond, int users, long warmupMillis, long durationMillis) throws InterruptedException {
+		ExecutorService executor = TaskExecutors.newPerTaskExecutor("load");
+		Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+		LongAdder dropped = new LongAdder();
+		Session[] sessions = new Session[users];
+		for (int u = 0; u < users; u++) {
+			sessions[u] = new Session(db, "load" + u);
+		}
+		long interval = 1_000_000_000L / ratePerSecond;
+		long start = System.nanoTime();
+		long end = start + TimeUnit.MILLISECONDS.toNanos(warmupMillis + durationMillis);
+		Thread scheduler = new Thread(() -> {
+			for (long due = start; due < end; due += interval) {
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (!inFlight.tryAcquire()) {
+					if (recording) {
+						dropped.increment();
+					}
+					continue;
+				}
+				long dueNanos = due;
+				Session session = sessions[ThreadLocalRandom.current().nextInt(users)];
+				executor.execute(() -> {
+					try {
+						timed(session, dueNanos);
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+		}, "load-scheduler");
+		measure(warmupMillis, durationMillis, scheduler::start);
+		scheduler.join();
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		return dropped.sum();
+	}
+
+	// Start the load, discard the warm-up, then record for the measured duration
+	private void measure(long warmupMillis, long durationMillis, Runnable start) throws InterruptedException {
+		for (OperationStats s : stats.values()) {
+			s.latency.reset();
+			s.errors.reset();
+		}
+		start.run();
+		Thread.sleep(warmupMillis);
+		recording = true;
+		Thread.sleep(durationMillis);
+		recording = false;
+	}
+
+	void printReport(String level, long durationMillis) {
+		LatencyHistogram all = new LatencyHistogram();
+		long errors = 0;
+		for (Map.Entry<String, OperationStats> e : stats.entrySet()) {
+			LatencyHistogram h = e.getValue().latency;
+			all.add(h);
+			errors += e.getValue().errors.sum();
+			System.out.println(String.format("  %-8s %9d %7d %10.3f %10.3f %10.3f %10.3f %10.3f", e.getKey(), h.getCount(),
+					e.getValue().errors.sum(), h.getMean() / 1e6, h.getValueAtPercentile(50) / 1e6,
+					h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6, h.getMax() / 1e6));
+		}
+		System.out.println(String.format("%s: %.1f ops/s, %d errors, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms", level,
+				all.getCount() * 1000.0 / durationMillis, errors, all.getValueAtPercentile(50) / 1e6,
+				all.getValueAtPercentile(99) / 1e6, all.getValueAtPercentile(99.9) / 1e6));
+	}
+
+	static void printHeader() {
+		System.out.println(String.format("  %-8s %9s %7s %10s %10s %10s %10s %10s", "op", "count", "errors",
+				"mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+	}
+
+	static Map<String, Integer> parseMix(String value) {
+		Map<String, Integer> mix = new LinkedHashMap<String, Integer>();
+		for (String part : value.split(",")) {
+			String[] kv = part.split("=");
+			if (kv.length != 2 || !List.of(OPERATIONS).contains(kv[0].trim())) {
+				throw new IllegalArgumentException("Invalid mix entry " + part + "; operations are " + String.join(", ", OPERATIONS));
+			}
+			int weight = Integer.parseInt(kv[1].trim());
+			if (weight > 0) {
+				mix.put(kv[0].trim(), weight);
+			}
+		}
+		if (mix.isEmpty()) {
+			throw new IllegalArgumentException("The mix has no operations");
+		}
+		return mix;
+	}
+
+	private static List<Integer> ints(String value) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (String s : value.split(",")) {
+			list.add(Integer.parseInt(s.trim()));
+		}
+		return list;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		options.put("--model", "closed");
+		options.put("--users", "1,4,16,64");
+		options.put("--rate", "1000");
+		options.put("--mix", "view=80,post=10,search=5,resolve=5");
+		options.put("--duration", "10000");
+		options.put("--warmup", "2000");
+		options.put("--think", "0");
+		options.put("--pool", "0");
+		options.put("--rows", "10000");
+		options.put("--answers", "5");
+		options.put("--storage", "mem");
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!options.containsKey(args[i])) {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+			options.put(args[i], args[i + 1]);
+		}
+		long warmup = Long.parseLong(options.get("--warmup"));
+		long duration = Long.parseLong(options.get("--duration"));
+		int rows = Integer.parseInt(options.get("--rows"));
+		int pool = Integer.parseInt(options.get("--pool"));
+
+		DatabaseHelper db = new DatabaseHelper(StorageProfile.parse(options.get("--storage")));
+		if (pool > 0) {
+			db.configurePool(1, pool, 60000, 60000, 60000);
+		}
+		db.connectToDatabase();
+		try {
+			DatabaseBenchmark.load(db, rows, Integer.parseInt(options.get("--answers")));
+			LoadGenerator generator = new LoadGenerator(db, rows, parseMix(options.get("--mix")));
+			List<Integer> users = ints(options.get("--users"));
+			if (options.get("--model").equals("open")) {
+				for (int rate : ints(options.get("--rate"))) {
+					printHeader();
+					long dropped = generator.runOpen(rate, users.get(users.size() - 1), warmup, duration);
+					generator.printReport("rate " + rate + "/s (" + dropped + " dropped)", duration);
+				}
+			} else {
+				for (int n : users) {
+					printHeader();
+					generator.runClosed(n, warmup, duration, Long.parseLong(options.get("--think")));
+					generator.printReport(n + " users", duration);
+				}
+			}
+			System.out.print(db.getMetrics().report());
+		} finally {
+			db.closeConnection();
+		}
+	}
+}
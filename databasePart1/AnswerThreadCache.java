@@ -0,0 +1,103 @@
+package databasePart1;
+
+import application.QuestionThread;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The AnswerThreadCache class keeps the threads of recently viewed questions, each a question
+ * with all of its answers, keyed by question ID, so that popular threads are served without
+ * querying the database.
+ * The least recently used threads are evicted once either the number of cached threads
+ * or the total number of cached answers exceeds its limit.
+ *
+ * DatabaseHelper invalidates a thread whenever its question or one of its answers changes.
+ * Every invalidation also bumps an epoch, and a thread loaded before that bump is not cached,
+ * so a slow read can never put back data that a concurrent write has just replaced.
+ */
+public class AnswerThreadCache {
+	private final int maxThreads;
+	private final int maxAnswers;
+	private final LinkedHashMap<Integer, QuestionThread> threads = new LinkedHashMap<Integer, QuestionThread>(16, 0.75f, true);
+	private int cachedAnswers = 0;
+	private long epoch = 0;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	public AnswerThreadCache(int maxThreads, int maxAnswers) {
+		this.maxThreads = maxThreads;
+		this.maxAnswers = maxAnswers;
+	}
+
+	// Return the cached thread of a question, or null on a miss
+	public synchronized QuestionThread get(int qid) {
+		QuestionThread thread = threads.get(qid);
+		if (thread != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return thread;
+	}
+
+	// Read before loading from the database and pass to put() afterwards
+	public synchronized long epoch() {
+		return epoch;
+	}
+
+	// Cache a freshly loaded thread unless something was invalidated while it was loading
+	public synchronized void put(int qid, QuestionThread thread, long loadedAtEpoch) {
+		int size = size(thread);
+		if (loadedAtEpoch != epoch || size > maxAnswers || maxThreads <= 0) {
+			return;
+		}
+		QuestionThread old = threads.put(qid, thread);
+		if (old != null) {
+			cachedAnswers -= size(old);
+		}
+		cachedAnswers += size;
+		Iterator<Map.Entry<Integer, QuestionThread>> eldest = threads.entrySet().iterator();
+		while (threads.size() > maxThreads || cachedAnswers > maxAnswers) {
+			cachedAnswers -= size(eldest.next().getValue());
+			eldest.remove();
+			evictions.increment();
+		}
+	}
+
+	public synchronized void invalidate(int qid) {
+		epoch++;
+		invalidations.increment();
+		QuestionThread old = threads.remove(qid);
+		if (old != null) {
+			cachedAnswers -= size(old);
+		}
+	}
+	
+	private static int size(QuestionThread thread) {
+		return thread.getAnswers().getAnswers().size();
+	}
+
+	public synchronized void clear() {
+		epoch++;
+		threads.clear();
+		cachedAnswers = 0;
+	}
+
+	// Cache statistics
+	public synchronized int getThreadCount() { return threads.size(); }
+	public synchronized int getAnswerCount() { return cachedAnswers; }
+	public long getHits() { return hits.sum(); }
+	public long getMisses() { return misses.sum(); }
+	public long getEvictions() { return evictions.sum(); }
+	public long getInvalidations() { return invalidations.sum(); }
+	public double getHitRate() {
+		long h = getHits(), total = h + getMisses();
+		return total == 0 ? 0.0 : (double) h / total;
+	}
+}
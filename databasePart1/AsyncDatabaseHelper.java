@@ -0,0 +1,121 @@
+package databasePart1;
+
+import application.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The AsyncDatabaseHelper class is a non-blocking facade over DatabaseHelper. Every call
+ * returns a CompletableFuture and runs the blocking JDBC work on its own (virtual) thread,
+ * so callers can fan out several reads at once. A semaphore bounds how many calls run
+ * against the database at the same time; the rest wait without holding a connection.
+ * Failures complete the future exceptionally with the SQLException instead of returning null.
+ */
+public class AsyncDatabaseHelper implements AutoCloseable {
+	private final DatabaseHelper databaseHelper;
+	private final ExecutorService executor;
+	private final Semaphore limiter;
+
+	public AsyncDatabaseHelper(DatabaseHelper databaseHelper, int maxConcurrency) {
+		this.databaseHelper = databaseHelper;
+		this.executor = TaskExecutors.newPerTaskExecutor("async-db");
+		this.limiter = new Semaphore(maxConcurrency, true);
+	}
+
+	// Run a blocking call on the executor, holding a concurrency permit while it runs
+	private <T> CompletableFuture<T> submit(DatabaseHelper.SqlCall<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			executor.execute(() -> {
+				try {
+					limiter.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					future.completeExceptionally(new SQLException("Interrupted while waiting to run", e));
+					return;
+				}
+				try {
+					future.complete(call.call());
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+				} finally {
+					limiter.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new SQLException("Async database helper is closed", e));
+		}
+		return future;
+	}
+
+	// Reads
+	public CompletableFuture<QuestionList> listAllQuestions() {
+		return submit(databaseHelper::fetchAllQuestions);
+	}
+	public CompletableFuture<QuestionList> listQuestionsAfter(int afterId, int pageSize) {
+		return submit(() -> databaseHelper.fetchQuestionsAfter(afterId, pageSize));
+	}
+	public CompletableFuture<QuestionList> listQuestionsBefore(int beforeId, int pageSize) {
+		return submit(() -> databaseHelper.fetchQuestionsBefore(beforeId, pageSize));
+	}
+	public CompletableFuture<AnswerList> viewAnswersToQuestion(int qid) {
+		return submit(() -> databaseHelper.fetchAnswersToQuestion(qid));
+	}
+	public CompletableFuture<QuestionThread> loadThread(int qid, int limit, int offset) {
+		return submit(() -> databaseHelper.fetchThread(qid, limit, offset));
+	}
+	public CompletableFuture<AnswerList> showAnswersToManage(String currentUser) {
+		return submit(() -> databaseHelper.fetchAnswersToManage(currentUser));
+	}
+	public CompletableFuture<AnswerList> showAnswersToManage(int qid) {
+		return submit(() -> databaseHelper.fetchAnswersToManage(qid));
+	}
+	public CompletableFuture<Answer> findAnswer(int aid) {
+		return submit(() -> databaseHelper.fetchAnswer(aid));
+	}
+	public CompletableFuture<QuestionList> showQuestionsToManage(String currentUser) {
+		return submit(() -> databaseHelper.fetchQuestionsToManage(currentUser));
+	}
+	public CompletableFuture<QuestionList> searchQuestions(String query, int k) {
+		return submit(() -> databaseHelper.fetchSearchResults(query, k));
+	}
+
+	// Writes complete when the change is committed, including in write-behind mode
+	public CompletableFuture<Integer> postQuestion(Question question) {
+		return submit(() -> databaseHelper.postQuestion(question)).thenCompose(f -> f);
+	}
+	public CompletableFuture<Integer> postAnswer(Answer answer) {
+		return submit(() -> databaseHelper.postAnswer(answer)).thenCompose(f -> f);
+	}
+	public CompletableFuture<Boolean> updateAnswer(int aid, String text) {
+		return submit(() -> databaseHelper.updateAnswer(aid, text)).thenCompose(f -> f);
+	}
+	public CompletableFuture<Boolean> deleteAnswer(int aid) {
+		return submit(() -> databaseHelper.deleteAnswer(aid)).thenCompose(f -> f);
+	}
+	public CompletableFuture<Boolean> markAnswerAsSolution(int aid) {
+		return submit(() -> databaseHelper.markAnswerAsSolution(aid)).thenCompose(f -> f);
+	}
+	public CompletableFuture<Boolean> updateQuestion(int qid, String title, String text) {
+		return submit(() -> databaseHelper.updateQuestion(qid, title, text)).thenCompose(f -> f);
+	}
+	public CompletableFuture<Boolean> markQuestionAsResolved(int qid) {
+		return submit(() -> databaseHelper.markQuestionAsResolved(qid)).thenCompose(f -> f);
+	}
+	public CompletableFuture<DatabaseHelper.ResolveResult> resolveWithSolution(int qid, int aid) {
+		return submit(() -> databaseHelper.resolveWithSolution(qid, aid)).thenCompose(f -> f);
+	}
+	public CompletableFuture<Boolean> deleteQuestion(int qid) {
+		return submit(() -> databaseHelper.deleteQuestion(qid)).thenCompose(f -> f);
+	}
+
+	// Stop accepting calls; calls already submitted still run
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
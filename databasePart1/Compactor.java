@@ -0,0 +1,194 @@
+package databasePart1;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * The Compactor class removes deleted questions, which DatabaseHelper only marks as
+ * tombstones, together with the answers left under them. Removed rows are copied to the
+ * questions_archive and answers_archive tables first unless archiving is turned off.
+ *
+ * Work is done in short transactions of at most batchSize rows, so a compaction never holds
+ * locks on a large part of a table and can run in the background while the application is
+ * in use. A tombstone is only removed once no answers remain under it, so an answer posted
+ * to it during a compaction is picked up by the next one instead of being orphaned.
+ */
+public class Compactor implements AutoCloseable {
+
+	static final int DEFAULT_BATCH_SIZE = 500;
+
+	private final ConnectionPool pool;
+	private final int batchSize;
+	private final boolean archive;
+	private final IntConsumer onRemoved; // Called with the id of every question removed
+	private final LongAdder questionsRemoved = new LongAdder();
+	private final LongAdder answersRemoved = new LongAdder();
+	private ScheduledExecutorService scheduler;
+
+	public Compactor(ConnectionPool pool, int batchSize, boolean archive, IntConsumer onRemoved) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.pool = pool;
+		this.batchSize = batchSize;
+		this.archive = archive;
+		this.onRemoved = onRemoved;
+	}
+
+	public long getQuestionsRemoved() { return questionsRemoved.sum(); }
+	public long getAnswersRemoved() { return answersRemoved.sum(); }
+
+	// Remove every tombstone present when called; returns how many questions were removed
+	public synchronized int compact() throws SQLException {
+		int removed = 0;
+		int lastId = 0;
+		while (true) {
+			List<Integer> tombstones = nextTombstones(lastId);
+			if (tombstones.isEmpty()) {
+				return removed;
+			}
+			lastId = tombstones.get(tombstones.size() - 1);
+			Integer[] qids = tombstones.toArray(new Integer[0]);
+			while (removeAnswers(qids) == batchSize) {
+				// Keep going until the answers under this batch of tombstones are gone
+			}
+			for (int qid : removeQuestions(qids)) {
+				onRemoved.accept(qid);
+				removed++;
+			}
+		}
+	}
+
+	// The next batch of tombstoned question ids after lastId, read through the (deleted, id) index
+	private List<Integer> nextTombstones(int lastId) throws SQLException {
+		List<Integer> ids = new ArrayList<Integer>();
+		try (PooledConnection conn = pool.borrow()) {
+			PreparedStatement pstmt = conn.prepareCached(
+					"SELECT id FROM questions WHERE deleted = 1 AND id > ? ORDER BY id LIMIT ?");
+			pstmt.setInt(1, lastId);
+			pstmt.setInt(2, batchSize);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					ids.add(rs.getInt(1));
+				}
+			}
+		}
+		return ids;
+	}
+
+	// Archive and delete up to batchSize answers under the given questions in one transaction
+	private int removeAnswers(Integer[] qids) throws SQLException {
+		try (PooledConnection conn = pool.borrow()) {
+			int removed = conn.inTransaction(c -> {
+				PreparedStatement select = c.prepareCached(
+						"SELECT id FROM answers WHERE underQuestion = ANY(?) ORDER BY id LIMIT ?");
+				select.setArray(1, c.getConnection().createArrayOf("INTEGER", qids));
+				select.setInt(2, batchSize);
+				List<Integer> ids = new ArrayList<Integer>();
+				try (ResultSet rs = select.executeQuery()) {
+					while (rs.next()) {
+						ids.add(rs.getInt(1));
+					}
+				}
+				if (ids.isEmpty()) {
+					return 0;
+				}
+				Array aids = c.getConnection().createArrayOf("INTEGER", ids.toArray());
+				if (archive) {
+					PreparedStatement copy = c.prepareCached("INSERT INTO answers_archive "
+							+ "(id, text, postedBy, underQuestion, isSolution) "
+							+ "SELECT id, text, postedBy, underQuestion, isSolution FROM answers WHERE id = ANY(?)");
+					copy.setArray(1, aids);
+					copy.executeUpdate();
+				}
+				PreparedStatement delete = c.prepareCached("DELETE FROM answers WHERE id = ANY(?)");
+				delete.setArray(1, aids);
+				return delete.executeUpdate();
+			});
+			answersRemoved.add(removed);
+			return removed;
+		}
+	}
+
+	// Archive and delete the given tombstones in one transaction, skipping any that gained an answer
+	private List<Integer> removeQuestions(Integer[] qids) throws SQLException {
+		String removable = "FROM questions q WHERE q.id = ANY(?) AND q.deleted = 1 "
+				+ "AND NOT EXISTS (SELECT 1 FROM answers a WHERE a.underQuestion = q.id)";
+		try (PooledConnection conn = pool.borrow()) {
+			List<Integer> removed = conn.inTransaction(c -> {
+				Array ids = c.getConnection().createArrayOf("INTEGER", qids);
+				PreparedStatement select = c.prepareCached("SELECT q.id " + removable + " FOR UPDATE");
+				select.setArray(1, ids);
+				List<Integer> found = new ArrayList<Integer>();
+				try (ResultSet rs = select.executeQuery()) {
+					while (rs.next()) {
+						found.add(rs.getInt(1));
+					}
+				}
+				if (found.isEmpty()) {
+					return found;
+				}
+				Array qidsFound = c.getConnection().createArrayOf("INTEGER", found.toArray());
+				if (archive) {
+					PreparedStatement copy = c.prepareCached("INSERT INTO questions_archive "
+							+ "(id, title, text, postedBy, resolved) "
+							+ "SELECT id, title, text, postedBy, resolved FROM questions WHERE id = ANY(?)");
+					copy.setArray(1, qidsFound);
+					copy.executeUpdate();
+				}
+				PreparedStatement delete = c.prepareCached("DELETE FROM questions WHERE id = ANY(?)");
+				delete.setArray(1, qidsFound);
+				delete.executeUpdate();
+				return found;
+			});
+			questionsRemoved.add(removed.size());
+			return removed;
+		}
+	}
+
+	// Run compact() every periodMillis on a daemon thread until close()
+	public synchronized void start(long periodMillis) {
+		if (scheduler != null) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "tombstone-compactor");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				compact();
+			} catch (SQLException | RuntimeException e) {
+				e.printStackTrace();
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	// Stop the background compaction, waiting for a running one to finish
+	@Override
+	public void close() {
+		ScheduledExecutorService s;
+		synchronized (this) {
+			s = scheduler;
+			scheduler = null;
+		}
+		if (s != null) {
+			s.shutdown();
+			try {
+				s.awaitTermination(30, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
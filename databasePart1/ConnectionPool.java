@@ -0,0 +1,221 @@
+package databasePart1;
+
+import java.sql.*;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ConnectionPool class keeps a bounded set of JDBC connections to the database,
+ * so that concurrent users do not all share a single H2 session.
+ * Connections are validated before they are handed out again, idle connections above
+ * the minimum size are evicted, and connections held for too long are reported as leaks.
+ * Borrowing only records the time; where a leaked connection was borrowed is captured only
+ * when borrow tracing is turned on with -DdbTraceBorrows=true or setTraceBorrows, since
+ * capturing a stack trace on every borrow is too costly to leave on.
+ */
+public class ConnectionPool {
+
+	/**
+	 * Connection lifecycle counters and the time spent waiting to borrow a connection.
+	 */
+	public static class Stats {
+		private final LongAdder opened = new LongAdder();
+		private final LongAdder closed = new LongAdder();
+		private final LongAdder borrows = new LongAdder();
+		private final LongAdder borrowTimeouts = new LongAdder();
+		private final LongAdder validationFailures = new LongAdder();
+		private final LongAdder leaks = new LongAdder();
+		private final LatencyHistogram borrowWait = new LatencyHistogram();
+
+		public long getOpened() { return opened.sum(); }
+		public long getClosed() { return closed.sum(); }
+		public long getBorrows() { return borrows.sum(); }
+		public long getBorrowTimeouts() { return borrowTimeouts.sum(); }
+		public long getValidationFailures() { return validationFailures.sum(); }
+		public long getLeaks() { return leaks.sum(); }
+		public LatencyHistogram getBorrowWait() { return borrowWait; }
+	}
+
+	// Connections idle for longer than this are re-validated before being borrowed
+	static final long VALIDATE_AFTER_IDLE_MILLIS = 1000;
+	static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	static final long HOUSEKEEPING_PERIOD_MILLIS = 5000;
+	static final String TRACE_BORROWS_PROPERTY = "dbTraceBorrows";
+
+	private final String url;
+	private final String user;
+	private final String pass;
+	private final int minSize;
+	private final int maxSize;
+	private final long borrowTimeoutMillis;
+	private final long idleTimeoutMillis;
+	private final long leakThresholdMillis;
+	private final int statementCacheSize;
+	private final StatementCache.Stats statementStats = new StatementCache.Stats();
+	private final Stats stats = new Stats();
+
+	// Idle connections, most recently returned first
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+	private final Semaphore permits;
+	private final ScheduledExecutorService housekeeper;
+	private volatile boolean closed = false;
+	private volatile SlowQueryLog slowQueryLog = null;
+	private volatile boolean traceBorrows = Boolean.getBoolean(TRACE_BORROWS_PROPERTY);
+
+	public ConnectionPool(String url, String user, String pass, int minSize, int maxSize,
+			long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+			int statementCacheSize) throws SQLException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+		}
+		this.url = url;
+		this.user = user;
+		this.pass = pass;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		// Open the minimum number of connections up front
+		for (int i = 0; i < minSize; i++) {
+			idle.offerLast(open());
+		}
+
+		housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-housekeeper");
+			t.setDaemon(true);
+			return t;
+		});
+		housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_PERIOD_MILLIS,
+				HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	// Borrow a connection, waiting up to the borrow timeout if the pool is exhausted
+	public PooledConnection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool is closed");
+		}
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				stats.borrowTimeouts.increment();
+				throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+		try {
+			PooledConnection pc;
+			while ((pc = idle.pollFirst()) != null && !isUsable(pc)) {
+				stats.validationFailures.increment();
+				closePhysical(pc);
+			}
+			if (pc == null) {
+				pc = open();
+			}
+			pc.markBorrowed(traceBorrows && leakThresholdMillis > 0);
+			borrowed.add(pc);
+			stats.borrows.increment();
+			stats.borrowWait.record(System.nanoTime() - start);
+			return pc;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	// Return a connection to the pool; called by PooledConnection.close()
+	void release(PooledConnection pc) {
+		borrowed.remove(pc);
+		try {
+			if (closed || !pc.reset()) {
+				closePhysical(pc);
+			} else {
+				idle.offerFirst(pc);
+			}
+		} finally {
+			permits.release();
+		}
+	}
+
+	private PooledConnection open() throws SQLException {
+		PooledConnection pc = new PooledConnection(this, DriverManager.getConnection(url, user, pass),
+				new StatementCache(statementCacheSize, statementStats));
+		stats.opened.increment();
+		return pc;
+	}
+
+	private void closePhysical(PooledConnection pc) {
+		pc.closePhysical();
+		stats.closed.increment();
+	}
+
+	private boolean isUsable(PooledConnection pc) {
+		if (System.currentTimeMillis() - pc.getLastUsed() < VALIDATE_AFTER_IDLE_MILLIS) {
+			return true;
+		}
+		try {
+			return pc.getConnection().isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	// Evict idle connections above the minimum size and report leaked connections
+	private void housekeep() {
+		long now = System.currentTimeMillis();
+		Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+		while (oldestFirst.hasNext() && idle.size() + borrowed.size() > minSize) {
+			PooledConnection pc = oldestFirst.next();
+			if (now - pc.getLastUsed() > idleTimeoutMillis && idle.remove(pc)) {
+				closePhysical(pc);
+			}
+		}
+		if (leakThresholdMillis > 0) {
+			for (PooledConnection pc : borrowed) {
+				if (now - pc.getBorrowedAt() > leakThresholdMillis && pc.flagLeak()) {
+					stats.leaks.increment();
+					System.err.println("Possible connection leak: connection held for "
+							+ (now - pc.getBorrowedAt()) + " ms");
+					if (pc.getBorrowSite() != null) {
+						pc.getBorrowSite().printStackTrace();
+					} else {
+						System.err.println("Run with -D" + TRACE_BORROWS_PROPERTY + "=true to see where it was borrowed");
+					}
+				}
+			}
+		}
+	}
+
+	// Pool statistics
+	public int getIdleCount() { return idle.size(); }
+	public int getBorrowedCount() { return borrowed.size(); }
+	public int getMaxSize() { return maxSize; }
+	public StatementCache.Stats getStatementCacheStats() { return statementStats; }
+	public Stats getStats() { return stats; }
+
+	// Record where each connection is borrowed, so that leak reports can show it
+	public void setTraceBorrows(boolean traceBorrows) { this.traceBorrows = traceBorrows; }
+	public boolean isTraceBorrows() { return traceBorrows; }
+
+	// Time the statements of every connection against the slow-query log, or stop with null
+	public void setSlowQueryLog(SlowQueryLog slowQueryLog) { this.slowQueryLog = slowQueryLog; }
+	SlowQueryLog getSlowQueryLog() { return slowQueryLog; }
+
+	// Close every idle connection; borrowed connections are closed when they are returned
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+		PooledConnection pc;
+		while ((pc = idle.pollFirst()) != null) {
+			closePhysical(pc);
+		}
+	}
+}
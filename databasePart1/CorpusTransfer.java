@@ -0,0 +1,450 @@
+package databasePart1;
+
+import application.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The CorpusTransfer class is a standalone tool that imports and exports the questions
+ * and answers tables as JSONL or CSV dumps. Both directions stream: export reads the tables
+ * through a forward-only cursor, and import runs a bounded producer/consumer pipeline where
+ * a reader thread parses and validates records while the caller inserts them in batches.
+ * If inserting fails, the reader is stopped and its file closed before the error is passed on.
+ *
+ * Dumps list every question before the answers, each with its original id. On import the
+ * questions get new ids, and answers are remapped so underQuestion still points at the
+ * question they were posted under. Only that id map grows with the size of the dump.
+ *
+ * Usage: CorpusTransfer import|export <file.jsonl|file.csv> [batchSize]
+ */
+public class CorpusTransfer {
+
+	static final int PROGRESS_INTERVAL = 10000;
+	static final int QUEUE_CAPACITY_PER_BATCH = 4;
+	static final String[] CSV_HEADER = {"type", "id", "title", "text", "postedBy", "resolved", "underQuestion", "isSolution"};
+
+	// Column limits from the questions and answers tables
+	static final int MAX_TITLE_LENGTH = 255;
+	static final int MAX_TEXT_LENGTH = 500;
+	static final int MAX_POSTED_BY_LENGTH = 255;
+
+	// A parsed dump record: exactly one of question or answer is set, or neither for end of stream
+	private static class Record {
+		final Question question;
+		final Answer answer;
+
+		Record(Question question, Answer answer) {
+			this.question = question;
+			this.answer = answer;
+		}
+	}
+
+	private static final Record END = new Record(null, null);
+
+	private final DatabaseHelper databaseHelper;
+	private final int batchSize;
+	private final PrintStream progress;
+
+	private long processed = 0;
+	private long questionsWritten = 0;
+	private long answersWritten = 0;
+	private long rejected = 0;
+	private long startNanos;
+
+	public CorpusTransfer(DatabaseHelper databaseHelper, int batchSize, PrintStream progress) {
+		this.databaseHelper = databaseHelper;
+		this.batchSize = batchSize;
+		this.progress = progress;
+	}
+
+	public long getQuestionCount() { return questionsWritten; }
+	public long getAnswerCount() { return answersWritten; }
+	public long getRejectedCount() { return rejected; }
+
+	// Import a dump, inserting questions and answers in batches of batchSize
+	public void importFrom(File file) throws IOException, SQLException {
+		boolean csv = isCsv(file);
+		BlockingQueue<Record> queue = new ArrayBlockingQueue<Record>(batchSize * QUEUE_CAPACITY_PER_BATCH);
+		Exception[] producerError = new Exception[1];
+
+		Thread producer = new Thread(() -> {
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), StandardCharsets.UTF_8))) {
+				if (csv) {
+					readCsv(in, queue);
+				} else {
+					readJsonLines(in, queue);
+				}
+			} catch (Exception e) {
+				producerError[0] = e;
+			} finally {
+				putUninterruptibly(queue, END);
+			}
+		}, "corpus-import-reader");
+
+		startNanos = System.nanoTime();
+		producer.start();
+
+		Map<Integer, Integer> questionIds = new HashMap<Integer, Integer>();
+		List<Question> questionBatch = new ArrayList<Question>(batchSize);
+		List<Integer> originalIds = new ArrayList<Integer>(batchSize);
+		List<Answer> answerBatch = new ArrayList<Answer>(batchSize);
+		boolean finished = false;
+		try {
+			Record record;
+			while ((record = queue.take()) != END) {
+				if (record.question != null) {
+					originalIds.add(record.question.getId());
+					questionBatch.add(record.question);
+					if (questionBatch.size() == batchSize) {
+						flushQuestions(questionBatch, originalIds, questionIds);
+					}
+				} else if (record.answer != null) {
+					Answer a = record.answer;
+					// The question may still be waiting in the current batch
+					if (!questionIds.containsKey(a.getUnderQuestion()) && !questionBatch.isEmpty()) {
+						flushQuestions(questionBatch, originalIds, questionIds);
+					}
+					Integer qid = questionIds.get(a.getUnderQuestion());
+					if (qid == null) {
+						reject("answer " + a.getId() + " refers to unknown question " + a.getUnderQuestion());
+						continue;
+					}
+					Answer remapped = new Answer(a.getId(), a.getText(), a.getPostedBy(), qid, a.getIsSolution());
+					answerBatch.add(remapped);
+					if (answerBatch.size() == batchSize) {
+						flushAnswers(answerBatch);
+					}
+				}
+			}
+			flushQuestions(questionBatch, originalIds, questionIds);
+			flushAnswers(answerBatch);
+			finished = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Import interrupted", e);
+		} finally {
+			if (!finished) {
+				stopProducer(producer, queue);
+			}
+		}
+		joinUninterruptibly(producer);
+		if (producerError[0] != null) {
+			throw new IOException("Failed to read " + file + ": " + producerError[0].getMessage(), producerError[0]);
+		}
+		report("Import finished", true);
+	}
+
+	private void flushQuestions(List<Question> batch, List<Integer> originalIds, Map<Integer, Integer> questionIds) throws SQLException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		int[] ids = databaseHelper.postQuestions(batch, batchSize);
+		for (int i = 0; i < ids.length; i++) {
+			questionIds.put(originalIds.get(i), ids[i]);
+		}
+		questionsWritten += ids.length;
+		count(ids.length);
+		batch.clear();
+		originalIds.clear();
+	}
+
+	private void flushAnswers(List<Answer> batch) throws SQLException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		answersWritten += databaseHelper.postAnswers(batch, batchSize).length;
+		count(batch.size());
+		batch.clear();
+	}
+
+	// Export every question, then every answer, streaming straight from the database
+	public void exportTo(File file) throws IOException, SQLException {
+		boolean csv = isCsv(file);
+		startNanos = System.nanoTime();
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+			if (csv) {
+				writeCsvRow(out, CSV_HEADER);
+			}
+			databaseHelper.forEachQuestion(q -> {
+				if (csv) {
+					writeCsvRow(out, "question", String.valueOf(q.getId()), q.getTitle(), q.getText(),
+							q.getPostedBy(), String.valueOf(q.getResolved()), "", "");
+				} else {
+					StringBuilder sb = new StringBuilder("{\"type\":\"question\",\"id\":").append(q.getId());
+					Json.quote(sb.append(",\"title\":"), q.getTitle());
+					Json.quote(sb.append(",\"text\":"), q.getText());
+					Json.quote(sb.append(",\"postedBy\":"), q.getPostedBy());
+					sb.append(",\"resolved\":").append(q.getResolved()).append("}\n");
+					out.write(sb.toString());
+				}
+				questionsWritten++;
+				count(1);
+			});
+			databaseHelper.forEachAnswer(a -> {
+				if (csv) {
+					writeCsvRow(out, "answer", String.valueOf(a.getId()), "", a.getText(), a.getPostedBy(), "",
+							String.valueOf(a.getUnderQuestion()), String.valueOf(a.getIsSolution()));
+				} else {
+					StringBuilder sb = new StringBuilder("{\"type\":\"answer\",\"id\":").append(a.getId());
+					sb.append(",\"underQuestion\":").append(a.getUnderQuestion());
+					Json.quote(sb.append(",\"text\":"), a.getText());
+					Json.quote(sb.append(",\"postedBy\":"), a.getPostedBy());
+					sb.append(",\"isSolution\":").append(a.getIsSolution()).append("}\n");
+					out.write(sb.toString());
+				}
+				answersWritten++;
+				count(1);
+			});
+		}
+		report("Export finished", true);
+	}
+
+	// Producer side: parse JSON lines into validated records
+	private void readJsonLines(BufferedReader in, BlockingQueue<Record> queue) throws IOException, InterruptedException {
+		String line;
+		long lineNumber = 0;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				Map<String, Object> fields = Json.parseObject(line);
+				queue.put(toRecord(fields.get("type"), fields.get("id"), fields.get("title"), fields.get("text"),
+						fields.get("postedBy"), fields.get("resolved"), fields.get("underQuestion"), fields.get("isSolution")));
+			} catch (IllegalArgumentException e) {
+				reject("line " + lineNumber + ": " + e.getMessage());
+			}
+		}
+	}
+
+	// Producer side: parse CSV rows (with the CSV_HEADER columns) into validated records
+	private void readCsv(BufferedReader in, BlockingQueue<Record> queue) throws IOException, InterruptedException {
+		List<String> row = readCsvRow(in);
+		if (row == null || !row.equals(Arrays.asList(CSV_HEADER))) {
+			throw new IOException("Expected CSV header " + String.join(",", CSV_HEADER));
+		}
+		long rowNumber = 1;
+		while ((row = readCsvRow(in)) != null) {
+			rowNumber++;
+			try {
+				if (row.size() != CSV_HEADER.length) {
+					throw new IllegalArgumentException("expected " + CSV_HEADER.length + " columns");
+				}
+				queue.put(toRecord(row.get(0), row.get(1), row.get(2), row.get(3), row.get(4),
+						row.get(5), row.get(6), row.get(7)));
+			} catch (IllegalArgumentException e) {
+				reject("row " + rowNumber + ": " + e.getMessage());
+			}
+		}
+	}
+
+	// Validate one record's fields against the table definitions
+	private static Record toRecord(Object type, Object id, Object title, Object text, Object postedBy,
+			Object resolved, Object underQuestion, Object isSolution) {
+		String body = requireText(text, "text", MAX_TEXT_LENGTH);
+		String author = requireText(postedBy, "postedBy", MAX_POSTED_BY_LENGTH);
+		if ("question".equals(type)) {
+			return new Record(new Question(toInt(id, "id"), requireText(title, "title", MAX_TITLE_LENGTH),
+					body, author, toBoolean(resolved)), null);
+		}
+		if ("answer".equals(type)) {
+			return new Record(null, new Answer(toInt(id, "id"), body, author,
+					toInt(underQuestion, "underQuestion"), toBoolean(isSolution)));
+		}
+		throw new IllegalArgumentException("unknown record type " + type);
+	}
+
+	private static String requireText(Object value, String field, int maxLength) {
+		if (value == null) {
+			throw new IllegalArgumentException("missing " + field);
+		}
+		String text = value.toString();
+		if (text.length() > maxLength) {
+			throw new IllegalArgumentException(field + " longer than " + maxLength + " characters");
+		}
+		return text;
+	}
+
+	private static int toInt(Object value, String field) {
+		try {
+			if (value instanceof Number) {
+				return ((Number) value).intValue();
+			}
+			return Integer.parseInt(String.valueOf(value).trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid " + field + " " + value);
+		}
+	}
+
+	private static boolean toBoolean(Object value) {
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		String s = value == null ? "" : value.toString().trim();
+		return s.equalsIgnoreCase("true") || s.equals("1");
+	}
+
+	// Read one RFC 4180 record, which may span lines inside quotes; returns null at end of input
+	static List<String> readCsvRow(BufferedReader in) throws IOException {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean any = false;
+		int c;
+		while ((c = in.read()) != -1) {
+			any = true;
+			if (quoted) {
+				if (c == '"') {
+					in.mark(1);
+					int next = in.read();
+					if (next == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						if (next != -1) {
+							in.reset();
+						}
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n') {
+				break;
+			} else if (c != '\r') {
+				field.append((char) c);
+			}
+		}
+		if (!any) {
+			return null;
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	static void writeCsvRow(Writer out, String... fields) throws IOException {
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			String f = fields[i] == null ? "" : fields[i];
+			if (f.indexOf(',') >= 0 || f.indexOf('"') >= 0 || f.indexOf('\n') >= 0 || f.indexOf('\r') >= 0) {
+				out.write('"');
+				out.write(f.replace("\"", "\"\""));
+				out.write('"');
+			} else {
+				out.write(f);
+			}
+		}
+		out.write('\n');
+	}
+
+	private synchronized void reject(String reason) {
+		rejected++;
+		progress.println("Skipped invalid record: " + reason);
+	}
+
+	private void count(int records) {
+		long before = processed;
+		processed += records;
+		if (processed / PROGRESS_INTERVAL != before / PROGRESS_INTERVAL) {
+			report("Progress", false);
+		}
+	}
+
+	private void report(String label, boolean summary) {
+		double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+		progress.printf("%s: %d records (%d questions, %d answers) in %.1f s, %.0f records/s%n",
+				label, processed, questionsWritten, answersWritten, seconds, processed / seconds);
+		if (summary && rejected > 0) {
+			progress.println("Skipped " + rejected + " invalid records");
+		}
+	}
+
+	private static boolean isCsv(File file) {
+		return file.getName().toLowerCase().endsWith(".csv");
+	}
+
+	private static void putUninterruptibly(BlockingQueue<Record> queue, Record record) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(record);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Stop the reader after the consumer failed: it may be blocked on a full queue, so keep
+	// emptying the queue until it has seen the interrupt, closed the file and exited
+	private static void stopProducer(Thread producer, BlockingQueue<Record> queue) {
+		producer.interrupt();
+		boolean interrupted = false;
+		while (producer.isAlive()) {
+			queue.clear();
+			try {
+				producer.join(10);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void joinUninterruptibly(Thread thread) {
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+			System.err.println("Usage: CorpusTransfer import|export <file.jsonl|file.csv> [batchSize]");
+			System.exit(2);
+		}
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DatabaseHelper.DEFAULT_BATCH_SIZE;
+		DatabaseHelper databaseHelper = new DatabaseHelper();
+		int status = 0;
+		try {
+			databaseHelper.connectToDatabase();
+			CorpusTransfer transfer = new CorpusTransfer(databaseHelper, batchSize, System.out);
+			if (args[0].equals("import")) {
+				transfer.importFrom(new File(args[1]));
+			} else {
+				transfer.exportTo(new File(args[1]));
+			}
+		} catch (IOException | SQLException e) {
+			System.err.println(args[0] + " failed: " + e.getMessage());
+			status = 1;
+		} finally {
+			databaseHelper.closeConnection();
+		}
+		// Exit only once the connection is closed, so queued writes are committed first
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+}
@@ -1,346 +1,1127 @@
 package databasePart1;
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDateTime;
 
 import application.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * The DatabaseHelper class is responsible for managing the connection to the database
  * and facilitates CRUD operations on questions and answers.
  */
 public class DatabaseHelper {
+	
+	/**
+	 * The outcome of resolveWithSolution: CONFLICT means the answer is not posted under
+	 * the question (or no longer exists), NOT_FOUND means the question does not exist or
+	 * was deleted, and in both cases nothing was changed.
+	 */
+	public enum ResolveResult { RESOLVED, CONFLICT, NOT_FOUND }
 
 	// JDBC driver name and database URL 
 	static final String JDBC_DRIVER = "org.h2.Driver";   
-	static final String DB_URL = "jdbc:h2:~/HW2Database";  
 
 	//  Database credentials 
 	static final String USER = "sa"; 
 	static final String PASS = ""; 
 
-	private Connection connection = null;
-	private Statement statement = null; 
+	// Connection pool defaults
+	static final int DEFAULT_MIN_POOL_SIZE = 1;
+	static final int DEFAULT_MAX_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 5000;
+	static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+	static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 30000;
+	static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+	private int minPoolSize = DEFAULT_MIN_POOL_SIZE;
+	private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+	private long borrowTimeoutMillis = DEFAULT_BORROW_TIMEOUT_MILLIS;
+	private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+	private long leakThresholdMillis = DEFAULT_LEAK_THRESHOLD_MILLIS;
+	private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	static final String INSERT_QUESTION = "INSERT INTO questions (title, text, postedBy, resolved) VALUES (?, ?, ?, ?)";
+	static final String INSERT_ANSWER = "INSERT INTO answers (text, postedBy, underQuestion, isSolution) VALUES (?, ?, ?, ?)";
+	// Keep a question's answer counters in step with its answers, in the same transaction.
+	// This also locks the question row, so an answer cannot be added to a question being deleted.
+	static final String UPDATE_ANSWER_COUNTS = "UPDATE questions SET answerCount = answerCount + ?, "
+			+ "solutionCount = solutionCount + ?, lastActivity = CURRENT_TIMESTAMP WHERE id = ? AND deleted = 0";
+
+	// Rows sent per JDBC batch and committed per transaction by the bulk insert methods
+	static final int DEFAULT_BATCH_SIZE = 500;
+
+	// Limits of the answer thread cache
+	static final int DEFAULT_CACHED_THREADS = 1000;
+	static final int DEFAULT_CACHED_ANSWERS = 50000;
+
+	// Write-behind queue defaults
+	static final int DEFAULT_WRITE_QUEUE_CAPACITY = 10000;
+	static final int DEFAULT_GROUP_COMMIT_SIZE = 256;
+	static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5;
+	static final long DEFAULT_QUEUE_OFFER_TIMEOUT_MILLIS = 5000;
+	
+	// Background tombstone compaction defaults
+	static final long DEFAULT_COMPACTION_PERIOD_MILLIS = 60000;
+
+	// Rows fetched per round trip when streaming a whole table
+	static final int STREAM_FETCH_SIZE = 1000;
+
+	// Number of ranked search results shown by default
+	static final int DEFAULT_SEARCH_RESULTS = 20;
+	
+	// Answer page size that loads a whole thread
+	public static final int ALL_ANSWERS = Integer.MAX_VALUE;
+
+	private final StorageProfile storage;
+	private ConnectionPool pool = null;
+	private final SearchIndex searchIndex = new SearchIndex();
+	private volatile WriteBehindQueue writeBehind = null;
+	private Compactor compactor = null;
+	private SlowQueryLog slowQueryLog = null;
+	private AnswerThreadCache answerCache = new AnswerThreadCache(DEFAULT_CACHED_THREADS, DEFAULT_CACHED_ANSWERS);
+
+	// Per-operation metrics, looked up once so that recording never touches the map
+	private final DbMetrics metrics = new DbMetrics(() -> pool, () -> answerCache);
+	private final DbMetrics.Operation postQuestionMetrics = metrics.operation("postQuestion");
+	private final DbMetrics.Operation postAnswerMetrics = metrics.operation("postAnswer");
+	private final DbMetrics.Operation postQuestionsMetrics = metrics.operation("postQuestions");
+	private final DbMetrics.Operation postAnswersMetrics = metrics.operation("postAnswers");
+	private final DbMetrics.Operation listAllQuestionsMetrics = metrics.operation("listAllQuestions");
+	private final DbMetrics.Operation listQuestionPageMetrics = metrics.operation("listQuestionPage");
+	private final DbMetrics.Operation viewAnswersMetrics = metrics.operation("viewAnswersToQuestion");
+	private final DbMetrics.Operation loadThreadMetrics = metrics.operation("loadThread");
+	private final DbMetrics.Operation answersByUserMetrics = metrics.operation("showAnswersToManage(user)");
+	private final DbMetrics.Operation answersByQuestionMetrics = metrics.operation("showAnswersToManage(qid)");
+	private final DbMetrics.Operation findAnswerMetrics = metrics.operation("findAnswer");
+	private final DbMetrics.Operation questionsByUserMetrics = metrics.operation("showQuestionsToManage");
+	private final DbMetrics.Operation searchMetrics = metrics.operation("searchQuestions");
+	private final DbMetrics.Operation updateAnswerMetrics = metrics.operation("updateAnswer");
+	private final DbMetrics.Operation deleteAnswerMetrics = metrics.operation("deleteAnswer");
+	private final DbMetrics.Operation markSolutionMetrics = metrics.operation("markAnswerAsSolution");
+	private final DbMetrics.Operation updateQuestionMetrics = metrics.operation("updateQuestion");
+	private final DbMetrics.Operation resolveQuestionMetrics = metrics.operation("markQuestionAsResolved");
+	private final DbMetrics.Operation resolveWithSolutionMetrics = metrics.operation("resolveWithSolution");
+	private final DbMetrics.Operation deleteQuestionMetrics = metrics.operation("deleteQuestion");
+
+	// Use the storage chosen by the db* system properties, by default ~/HW2Database
+	public DatabaseHelper() {
+		this(StorageProfile.fromSystemProperties());
+	}
+
+	// Use another database, e.g. an in-memory one for tests and benchmarks
+	public DatabaseHelper(StorageProfile storage) {
+		this.storage = storage;
+	}
+
+	public DatabaseHelper(String dbUrl) {
+		this(StorageProfile.url(dbUrl));
+	}
+
+	public StorageProfile getStorage() { return storage; }
+
+	// Configure the connection pool; takes effect on the next connectToDatabase()
+	public void configurePool(int minPoolSize, int maxPoolSize, long borrowTimeoutMillis,
+			long idleTimeoutMillis, long leakThresholdMillis) {
+		this.minPoolSize = minPoolSize;
+		this.maxPoolSize = maxPoolSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+	}
+
+	public int getMaxPoolSize() { return maxPoolSize; }
+
+	// Configure how many prepared statements each pooled connection keeps
+	public void configureStatementCache(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	// Configure how many rows postQuestions/postAnswers send and commit per batch
+	public void configureBatchSize(int batchSize) {
+		requireBatchSize(batchSize);
+		this.batchSize = batchSize;
+	}
+	
+	private static void requireBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+	}
+
+	// Configure how many answer threads, and answers in total, the read-through cache may hold
+	public void configureAnswerCache(int maxThreads, int maxAnswers) {
+		this.answerCache = new AnswerThreadCache(maxThreads, maxAnswers);
+	}
+
+	public AnswerThreadCache getAnswerCache() { return answerCache; }
+
+	public DbMetrics getMetrics() { return metrics; }
+
+	// Publish the metrics as JMX MBeans under the given name and, if reportPeriodMillis > 0,
+	// print a metrics report to System.out that often
+	public void exposeMetrics(String name, long reportPeriodMillis) {
+		try {
+			metrics.registerMBeans(name);
+		} catch (javax.management.JMException e) {
+			System.err.println("Could not register metrics MBeans: " + e.getMessage());
+		}
+		if (reportPeriodMillis > 0) {
+			metrics.startReporting(reportPeriodMillis, System.out);
+		}
+	}
+
+	// Log every statement slower than thresholdMillis, with its plan, to rotating files named by
+	// filePattern (see java.util.logging.FileHandler, e.g. "%h/HW2-slow-queries.%g.log")
+	public void enableSlowQueryLog(long thresholdMillis, String filePattern) throws IOException {
+		if (pool == null) {
+			throw new IllegalStateException("Connect to the database before enabling the slow-query log");
+		}
+		disableSlowQueryLog();
+		slowQueryLog = new SlowQueryLog(storage.getUrl(), USER, PASS, thresholdMillis, filePattern);
+		pool.setSlowQueryLog(slowQueryLog);
+	}
+
+	public void disableSlowQueryLog() {
+		if (slowQueryLog != null) {
+			if (pool != null) {
+				pool.setSlowQueryLog(null);
+			}
+			slowQueryLog.close();
+			slowQueryLog = null;
+		}
+	}
+
+	public SlowQueryLog getSlowQueryLog() { return slowQueryLog; }
+
+	// Prepared statement cache hit/miss counters across all pooled connections
+	public StatementCache.Stats getStatementCacheStats() {
+		return pool == null ? null : pool.getStatementCacheStats();
+	}
 
 	public void connectToDatabase() throws SQLException {
 		try {
 			Class.forName(JDBC_DRIVER); // Load the JDBC driver
 			System.out.println("Connecting to database...");
-			connection = DriverManager.getConnection(DB_URL, USER, PASS);
-			statement = connection.createStatement(); 
-			// statement.execute("DROP ALL OBJECTS");
+			pool = new ConnectionPool(storage.getUrl(), USER, PASS, minPoolSize, maxPoolSize,
+					borrowTimeoutMillis, idleTimeoutMillis, leakThresholdMillis, statementCacheSize);
 
 			createTables();  // Create the necessary tables if they don't exist
+			rebuildSearchIndex();
 		} catch (ClassNotFoundException e) {
 			System.err.println("JDBC Driver not found: " + e.getMessage());
 		}
 	}
 
 	private void createTables() throws SQLException {
-	    // Create questions table
-		String questionsTable = "CREATE TABLE IF NOT EXISTS questions ("
-				+ "id INT AUTO_INCREMENT PRIMARY KEY, "
-				+ "title VARCHAR(255), "
-				+ "text VARCHAR(500), "
-				+ "postedBy VARCHAR(255), "
-				+ "resolved INT)";
-		statement.execute(questionsTable);
-		
-	    // Create answers table
-		String answersTable = "CREATE TABLE IF NOT EXISTS answers ("
-				+ "id INT AUTO_INCREMENT PRIMARY KEY, "
-				+ "text VARCHAR(500), "
-				+ "postedBy VARCHAR(255), "
-				+ "underQuestion INT, "
-				+ "isSolution INT)";
-		statement.execute(answersTable);
-	}
-
-	// Create a new question
-	public void postQuestion(Question question) throws SQLException {
-		String insertQuestion = "INSERT INTO questions (title, text, postedBy, resolved) VALUES (?, ?, ?, ?)";
-		try (PreparedStatement pstmt = connection.prepareStatement(insertQuestion)) {
+		// Create or upgrade the tables and indexes through the versioned migrations
+		new SchemaMigrator(pool).migrate();
+	}
+
+	// Create a new question; the future completes with its id once it is committed
+	public CompletableFuture<Integer> postQuestion(Question question) throws SQLException {
+		return write(postQuestionMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCachedReturningKeys(INSERT_QUESTION);
 			pstmt.setString(1, question.getTitle());
 			pstmt.setString(2, question.getText());
 			pstmt.setString(3, question.getPostedBy());
 			pstmt.setInt(4, question.getResolved() ? 1 : 0);
 			pstmt.executeUpdate();
-		}
+			question.setId(generatedKey(pstmt));
+			return question.getId();
+		}, qid -> searchIndex.indexQuestion(qid, question.getTitle(), question.getText()));
 	}
 	
-	// Create a new answer
-	public void postAnswer(Answer answer) throws SQLException {
-		String insertQuestion = "INSERT INTO answers (text, postedBy, underQuestion, isSolution) VALUES (?, ?, ?, ?)";
-		try (PreparedStatement pstmt = connection.prepareStatement(insertQuestion)) {
+	// Create a new answer; the future completes with its id once it is committed
+	public CompletableFuture<Integer> postAnswer(Answer answer) throws SQLException {
+		return write(postAnswerMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCachedReturningKeys(INSERT_ANSWER);
 			pstmt.setString(1, answer.getText());
 			pstmt.setString(2, answer.getPostedBy());
 			pstmt.setInt(3, answer.getUnderQuestion());
 			pstmt.setInt(4, answer.getIsSolution() ? 1 : 0);
 			pstmt.executeUpdate();
+			answer.setId(generatedKey(pstmt));
+			if (updateAnswerCounts(conn, answer.getUnderQuestion(), 1, answer.getIsSolution() ? 1 : 0) == 0) {
+				throw new SQLException("Question " + answer.getUnderQuestion() + " does not exist");
+			}
+			return answer.getId();
+		}, aid -> {
+			answerCache.invalidate(answer.getUnderQuestion());
+			searchIndex.indexAnswer(aid, answer.getUnderQuestion(), answer.getText());
+		});
+	}
+	
+	// Create many questions with JDBC batching, committing once per batch; returns the new ids in order.
+	// If a batch fails it is rolled back, but batches committed before it are kept.
+	public int[] postQuestions(List<Question> questions) throws SQLException {
+		return postQuestions(questions, batchSize);
+	}
+	
+	// postQuestions with its own batch size instead of the configured one
+	public int[] postQuestions(List<Question> questions, int batchSize) throws SQLException {
+		requireBatchSize(batchSize);
+		flushWrites(); // Keep queued single writes ahead of the bulk insert
+		long began = System.nanoTime();
+		int[] ids = new int[questions.size()];
+		try (PooledConnection conn = pool.borrow()) {
+			Connection connection = conn.getConnection();
+			PreparedStatement pstmt = conn.prepareCachedReturningKeys(INSERT_QUESTION);
+			connection.setAutoCommit(false);
+			try {
+				for (int start = 0; start < questions.size(); start += batchSize) {
+					int end = Math.min(start + batchSize, questions.size());
+					for (int i = start; i < end; i++) {
+						Question question = questions.get(i);
+						pstmt.setString(1, question.getTitle());
+						pstmt.setString(2, question.getText());
+						pstmt.setString(3, question.getPostedBy());
+						pstmt.setInt(4, question.getResolved() ? 1 : 0);
+						pstmt.addBatch();
+					}
+					executeBatch(connection, pstmt, ids, start, end, null);
+					for (int i = start; i < end; i++) {
+						Question question = questions.get(i);
+						question.setId(ids[i]);
+						searchIndex.indexQuestion(ids[i], question.getTitle(), question.getText());
+						searchIndex.setResolved(ids[i], question.getResolved());
+					}
+				}
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException | RuntimeException e) {
+			postQuestionsMetrics.recordFailure(began);
+			throw e;
+		}
+		postQuestionsMetrics.record(began, ids.length);
+		return ids;
+	}
+	
+	// Create many answers with JDBC batching, committing once per batch; returns the new ids in order.
+	// Each batch also updates the answer counters of its questions, one row per question.
+	public int[] postAnswers(List<Answer> answers) throws SQLException {
+		return postAnswers(answers, batchSize);
+	}
+	
+	// postAnswers with its own batch size instead of the configured one
+	public int[] postAnswers(List<Answer> answers, int batchSize) throws SQLException {
+		requireBatchSize(batchSize);
+		flushWrites();
+		long began = System.nanoTime();
+		int[] ids = new int[answers.size()];
+		try (PooledConnection conn = pool.borrow()) {
+			Connection connection = conn.getConnection();
+			PreparedStatement pstmt = conn.prepareCachedReturningKeys(INSERT_ANSWER);
+			PreparedStatement counts = conn.prepareCached(UPDATE_ANSWER_COUNTS);
+			connection.setAutoCommit(false);
+			try {
+				for (int start = 0; start < answers.size(); start += batchSize) {
+					int end = Math.min(start + batchSize, answers.size());
+					Map<Integer, int[]> added = new TreeMap<Integer, int[]>(); // Sorted to lock rows in a stable order
+					for (int i = start; i < end; i++) {
+						Answer answer = answers.get(i);
+						pstmt.setString(1, answer.getText());
+						pstmt.setString(2, answer.getPostedBy());
+						pstmt.setInt(3, answer.getUnderQuestion());
+						pstmt.setInt(4, answer.getIsSolution() ? 1 : 0);
+						pstmt.addBatch();
+						int[] n = added.computeIfAbsent(answer.getUnderQuestion(), qid -> new int[2]);
+						n[0]++;
+						n[1] += answer.getIsSolution() ? 1 : 0;
+					}
+					for (Map.Entry<Integer, int[]> e : added.entrySet()) {
+						counts.setInt(1, e.getValue()[0]);
+						counts.setInt(2, e.getValue()[1]);
+						counts.setInt(3, e.getKey());
+						counts.addBatch();
+					}
+					executeBatch(connection, pstmt, ids, start, end, counts);
+					for (int i = start; i < end; i++) {
+						Answer answer = answers.get(i);
+						answer.setId(ids[i]);
+						searchIndex.indexAnswer(ids[i], answer.getUnderQuestion(), answer.getText());
+						answerCache.invalidate(answer.getUnderQuestion());
+					}
+				}
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException | RuntimeException e) {
+			postAnswersMetrics.recordFailure(began);
+			throw e;
+		}
+		postAnswersMetrics.record(began, ids.length);
+		return ids;
+	}
+	
+	// Run the queued batch, and the batch queued on followUp if there is one, in one transaction
+	// and copy its generated keys into ids[start..end). Every followUp statement must change a row.
+	private static void executeBatch(Connection connection, PreparedStatement pstmt, int[] ids,
+			int start, int end, PreparedStatement followUp) throws SQLException {
+		try {
+			pstmt.executeBatch();
+			if (followUp != null) {
+				for (int n : followUp.executeBatch()) {
+					if (n == 0) {
+						throw new SQLException("Batch refers to a question that does not exist");
+					}
+				}
+			}
+			try (ResultSet keys = pstmt.getGeneratedKeys()) {
+				for (int i = start; i < end; i++) {
+					if (!keys.next()) {
+						throw new SQLException("Expected " + (end - start) + " generated keys");
+					}
+					ids[i] = keys.getInt(1);
+				}
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			pstmt.clearBatch();
+			if (followUp != null) {
+				followUp.clearBatch();
+			}
+			connection.rollback();
+			throw e;
+		}
+	}
+	
+	private static int generatedKey(PreparedStatement pstmt) throws SQLException {
+		try (ResultSet keys = pstmt.getGeneratedKeys()) {
+			if (!keys.next()) {
+				throw new SQLException("No generated key returned");
+			}
+			return keys.getInt(1);
 		}
 	}
 	
 	// List all questions
 	public QuestionList listAllQuestions() {
-	    String query = "SELECT * FROM questions";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        String data = "";
-	        ArrayList<String> questions = new ArrayList<String>();
-	        
-	        while (rs.next()) {
-	        	data += rs.getInt("id") + ". ";
-	            data += rs.getString("title");
-	            if (rs.getInt("resolved") == 1) {
-	            	data += " (Resolved)" + "\n";
-	            } else {
-	            	data += " (Unresolved)" + "\n";
-	            }
-	            data += "Posted by: " + rs.getString("postedBy") + "\n";
-	            data += rs.getString("text");
-	            data += "\n------------------------------------------\n";
-	            questions.add(data);
-	            data = "";
-	        }
-	        QuestionList ql = new QuestionList(questions);
-	        return ql;
-	    } catch (SQLException e) {
-	        e.printStackTrace();
+		return orNull(() -> fetchAllQuestions());
+	}
+	
+	QuestionList fetchAllQuestions() throws SQLException {
+	    String query = "SELECT * FROM questions WHERE deleted = 0";
+	    long start = System.nanoTime();
+	    QuestionList ql;
+	    try (PooledConnection conn = pool.borrow()) {
+	    	PreparedStatement pstmt = conn.prepareCached(query);
+	        ql = new QuestionList(readQuestions(pstmt));
+	    } catch (SQLException | RuntimeException e) {
+	    	listAllQuestionsMetrics.recordFailure(start);
+	    	throw e;
 	    }
-	    return null; // If no user exists or an error occurs
+	    listAllQuestionsMetrics.record(start, ql.getQuestions().size());
+	    return ql;
+	}
+	
+	// List one page of questions with ids greater than afterId (use 0 for the first page)
+	public QuestionList listQuestionsAfter(int afterId, int pageSize) {
+		return orNull(() -> fetchQuestionsAfter(afterId, pageSize));
+	}
+	
+	QuestionList fetchQuestionsAfter(int afterId, int pageSize) throws SQLException {
+		String query = "SELECT * FROM questions WHERE deleted = 0 AND id > ? ORDER BY id LIMIT ?";
+		return fetchQuestionPage(query, afterId, pageSize, false);
+	}
+	
+	// List one page of questions with ids less than beforeId, in ascending order
+	public QuestionList listQuestionsBefore(int beforeId, int pageSize) {
+		return orNull(() -> fetchQuestionsBefore(beforeId, pageSize));
+	}
+	
+	QuestionList fetchQuestionsBefore(int beforeId, int pageSize) throws SQLException {
+		String query = "SELECT * FROM questions WHERE deleted = 0 AND id < ? ORDER BY id DESC LIMIT ?";
+		return fetchQuestionPage(query, beforeId, pageSize, true);
+	}
+	
+	// Fetch one extra row past the page to learn whether another page exists in that direction
+	private QuestionList fetchQuestionPage(String query, int cursor, int pageSize, boolean backwards) throws SQLException {
+		long start = System.nanoTime();
+		ArrayList<Question> questions;
+		try (PooledConnection conn = pool.borrow()) {
+			PreparedStatement pstmt = conn.prepareCached(query);
+			pstmt.setInt(1, cursor);
+			pstmt.setInt(2, pageSize + 1);
+			questions = readQuestions(pstmt);
+		} catch (SQLException | RuntimeException e) {
+			listQuestionPageMetrics.recordFailure(start);
+			throw e;
+		}
+		listQuestionPageMetrics.record(start, questions.size());
+		
+		boolean more = questions.size() > pageSize;
+		if (more) {
+			questions.remove(pageSize);
+		}
+		if (backwards) {
+			Collections.reverse(questions);
+		}
+		
+		QuestionList ql = new QuestionList(questions);
+		int firstId = questions.isEmpty() ? cursor : questions.get(0).getId();
+		int lastId = questions.isEmpty() ? cursor : questions.get(questions.size() - 1).getId();
+		if (backwards) {
+			ql.setPage(firstId, lastId, more, true);
+		} else {
+			ql.setPage(firstId, lastId, cursor > 0, more);
+		}
+		return ql;
 	}
 	
-	// View the answers to a question
+	// View the answers to a question, solutions first, served from the answer thread cache when possible
 	public AnswerList viewAnswersToQuestion(int qid) {
-		String query = "SELECT * FROM answers WHERE underQuestion = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-	    	pstmt.setInt(1, qid);
-	    	
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        String data = "";
-	        ArrayList<String> answers = new ArrayList<String>();
-	        
-	        while (rs.next()) {
-	        	if (rs.getInt("isSolution") == 1) {
-	        		data += "(Solution) ";
-	        	}
-	            data += rs.getString("text") + "\n";
-	            data += "Posted by: " + rs.getString("postedBy");
-	            data += "\n------------------------------------------\n";
-	            answers.add(data);
-	            data = "";
-	        }
-	        
-	        AnswerList al = new AnswerList(answers);
-	        return al;
-	    } catch (SQLException e) {
-	        e.printStackTrace();
-	    }
-	    return null; // If no user exists or an error occurs
+		return orNull(() -> fetchAnswersToQuestion(qid));
+	}
+	
+	AnswerList fetchAnswersToQuestion(int qid) throws SQLException {
+		QuestionThread thread = cachedThread(qid, viewAnswersMetrics);
+		return new AnswerList(thread == null ? new ArrayList<Answer>() : thread.getAnswers().getAnswers());
+	}
+	
+	// Load a question with all of its answers, solutions first, served from the answer thread
+	// cache when possible; null if there is no such question
+	public QuestionThread loadThread(int qid) {
+		return loadThread(qid, ALL_ANSWERS, 0);
+	}
+	
+	// Load a question with up to limit of its answers, solutions first, skipping the first offset
+	public QuestionThread loadThread(int qid, int limit, int offset) {
+		return orNull(() -> fetchThread(qid, limit, offset));
+	}
+	
+	// A whole thread goes through the cache; a page is cut from a cached thread, or else
+	// queried on its own without being cached
+	QuestionThread fetchThread(int qid, int limit, int offset) throws SQLException {
+		if (limit == ALL_ANSWERS && offset == 0) {
+			return cachedThread(qid, loadThreadMetrics);
+		}
+		long start = System.nanoTime();
+		QuestionThread cached = answerCache.get(qid);
+		if (cached == null) {
+			return queryThread(qid, limit, offset, loadThreadMetrics);
+		}
+		int size = cached.getAnswers().getAnswers().size();
+		int from = Math.min(offset, size);
+		int to = (int) Math.min(size, (long) from + limit);
+		loadThreadMetrics.record(start, to - from);
+		return copyOf(cached, from, to, offset);
+	}
+	
+	private QuestionThread cachedThread(int qid, DbMetrics.Operation op) throws SQLException {
+		long start = System.nanoTime();
+		QuestionThread cached = answerCache.get(qid);
+		if (cached != null) {
+			op.record(start, cached.getAnswers().getAnswers().size());
+			return copyOf(cached, 0, cached.getAnswers().getAnswers().size(), 0);
+		}
+		long epoch = answerCache.epoch();
+		QuestionThread thread = queryThread(qid, ALL_ANSWERS, 0, op);
+		if (thread == null) {
+			return null;
+		}
+		answerCache.put(qid, thread, epoch);
+		return copyOf(thread, 0, thread.getAnswers().getAnswers().size(), 0);
+	}
+	
+	// Callers get their own copy of the answers in [from, to) of a cached thread, so that
+	// changing the lists or rows they are given cannot change what later readers see
+	private static QuestionThread copyOf(QuestionThread thread, int from, int to, int offset) {
+		Question q = thread.getQuestion();
+		ArrayList<Answer> all = thread.getAnswers().getAnswers();
+		ArrayList<Answer> answers = new ArrayList<Answer>(to - from);
+		for (int i = from; i < to; i++) {
+			Answer a = all.get(i);
+			answers.add(new Answer(a.getId(), a.getText(), a.getPostedBy(), a.getUnderQuestion(), a.getIsSolution()));
+		}
+		Question question = new Question(q.getId(), q.getTitle(), q.getText(), q.getPostedBy(), q.getResolved(),
+				q.getAnswerCount(), q.getSolutionCount(), q.getLastActivity());
+		return new QuestionThread(question, new AnswerList(answers, true), offset, to < all.size());
+	}
+	
+	// One round trip: the question is joined to its page of answers, so every row repeats the
+	// question and a question without answers still comes back as one row. The page is fetched
+	// with one extra answer to learn whether more follow.
+	private QuestionThread queryThread(int qid, int limit, int offset, DbMetrics.Operation op) throws SQLException {
+		String query = "SELECT q.*, a.id AS answerId, a.text AS answerText, a.postedBy AS answerPostedBy, "
+				+ "a.isSolution AS answerIsSolution FROM questions q "
+				+ "LEFT JOIN (SELECT * FROM answers WHERE underQuestion = ? ORDER BY isSolution DESC, id LIMIT ? OFFSET ?) a "
+				+ "ON a.underQuestion = q.id WHERE q.id = ? AND q.deleted = 0 ORDER BY a.isSolution DESC, a.id";
+		long start = System.nanoTime();
+		Question question = null;
+		ArrayList<Answer> answers = new ArrayList<Answer>();
+		try (PooledConnection conn = pool.borrow()) {
+			PreparedStatement pstmt = conn.prepareCached(query);
+			pstmt.setInt(1, qid);
+			pstmt.setLong(2, limit + 1L);
+			pstmt.setInt(3, offset);
+			pstmt.setInt(4, qid);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					if (question == null) {
+						question = readQuestion(rs);
+					}
+					int aid = rs.getInt("answerId");
+					if (!rs.wasNull()) {
+						answers.add(new Answer(aid, rs.getString("answerText"), rs.getString("answerPostedBy"),
+								qid, rs.getInt("answerIsSolution") == 1));
+					}
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			op.recordFailure(start);
+			throw e;
+		}
+		op.record(start, answers.size());
+		if (question == null) {
+			return null;
+		}
+		boolean more = answers.size() > limit;
+		if (more) {
+			answers.remove(limit);
+		}
+		return new QuestionThread(question, new AnswerList(answers, true), offset, more);
 	}
 	
-	// Show the user's answers, which they are permitted to manage
+	// Show the user's answers under questions that are not deleted, which they are permitted to manage
 	public AnswerList showAnswersToManage(String currentUser) {
-		String query = "SELECT * FROM answers WHERE postedBy = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		return orNull(() -> fetchAnswersToManage(currentUser));
+	}
+	
+	AnswerList fetchAnswersToManage(String currentUser) throws SQLException {
+		String query = "SELECT * FROM answers WHERE postedBy = ? "
+				+ "AND underQuestion IN (SELECT id FROM questions WHERE deleted = 0)";
+		long start = System.nanoTime();
+		AnswerList al;
+	    try (PooledConnection conn = pool.borrow()) {
+	    	PreparedStatement pstmt = conn.prepareCached(query);
 	    	pstmt.setString(1, currentUser);
-	    	
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        String data = "";
-	        int index = 1;
-	        
-	        ArrayList<String> answers = new ArrayList<String>();
-	        ArrayList<Integer> db_ids = new ArrayList<Integer>();
-	        db_ids.add(null); // Fill index 0 of ArrayList with null
-	        
-	        while (rs.next()) {
-	        	data += index + ". ";
-	        	if (rs.getInt("isSolution") == 1) {
-	        		data += "(Solution) ";
-	        	}
-	            data += rs.getString("text") + "\n";
-	            data += "Posted by: " + rs.getString("postedBy");
-	            data += "\n------------------------------------------\n";
-	            answers.add(data);
-	            db_ids.add(rs.getInt("id"));
-	            index++;
-	            data = "";
-	        }
-	        
-	        AnswerList al = new AnswerList(answers, db_ids);
-	        return al;
-	    } catch (SQLException e) {
-	        e.printStackTrace();
+	        al = new AnswerList(readAnswers(pstmt), true);
+	    } catch (SQLException | RuntimeException e) {
+	    	answersByUserMetrics.recordFailure(start);
+	    	throw e;
 	    }
-	    return null; // If no user exists or an error occurs
+	    answersByUserMetrics.record(start, al.getAnswers().size());
+	    return al;
 	}
 	
 	// Show the answers under a user's question, which they are permitted to mark as solution
 	public AnswerList showAnswersToManage(int qid) {
+		return orNull(() -> fetchAnswersToManage(qid));
+	}
+	
+	AnswerList fetchAnswersToManage(int qid) throws SQLException {
 		String query = "SELECT * FROM answers WHERE underQuestion = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		long start = System.nanoTime();
+		AnswerList al;
+	    try (PooledConnection conn = pool.borrow()) {
+	    	PreparedStatement pstmt = conn.prepareCached(query);
 	    	pstmt.setInt(1, qid);
-	    	
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        String data = "";
-	        int index = 1;
-	        
-	        ArrayList<String> answers = new ArrayList<String>();
-	        ArrayList<Integer> db_ids = new ArrayList<Integer>();
-	        db_ids.add(null); // Fill index 0 of ArrayList with null
-	        
-	        while (rs.next()) {
-	        	data += index + ". ";
-	        	if (rs.getInt("isSolution") == 1) {
-	        		data += "(Solution) ";
-	        	}
-	            data += rs.getString("text") + "\n";
-	            data += "Posted by: " + rs.getString("postedBy");
-	            data += "\n------------------------------------------\n";
-	            answers.add(data);
-	            db_ids.add(rs.getInt("id"));
-	            index++;
-	            data = "";
-	        }
-	        
-	        AnswerList al = new AnswerList(answers, db_ids);
-	        return al;
-	    } catch (SQLException e) {
-	        e.printStackTrace();
+	        al = new AnswerList(readAnswers(pstmt), true);
+	    } catch (SQLException | RuntimeException e) {
+	    	answersByQuestionMetrics.recordFailure(start);
+	    	throw e;
+	    }
+	    answersByQuestionMetrics.record(start, al.getAnswers().size());
+	    return al;
+	}
+	
+	// Look up one answer, or null if there is no such answer
+	public Answer findAnswer(int aid) {
+		return orNull(() -> fetchAnswer(aid));
+	}
+	
+	Answer fetchAnswer(int aid) throws SQLException {
+		String query = "SELECT * FROM answers WHERE id = ?";
+		long start = System.nanoTime();
+		ArrayList<Answer> found;
+	    try (PooledConnection conn = pool.borrow()) {
+	    	PreparedStatement pstmt = conn.prepareCached(query);
+	    	pstmt.setInt(1, aid);
+	        found = readAnswers(pstmt);
+	    } catch (SQLException | RuntimeException e) {
+	    	findAnswerMetrics.recordFailure(start);
+	    	throw e;
 	    }
-	    return null; // If no user exists or an error occurs
+	    findAnswerMetrics.record(start, found.size());
+	    return found.isEmpty() ? null : found.get(0);
 	}
 	
 	// Show the user's questions, which they are permitted to manage
 	public QuestionList showQuestionsToManage(String currentUser) {
-		String query = "SELECT * FROM questions WHERE postedBy = ?";
-	    try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		return orNull(() -> fetchQuestionsToManage(currentUser));
+	}
+	
+	QuestionList fetchQuestionsToManage(String currentUser) throws SQLException {
+		String query = "SELECT * FROM questions WHERE postedBy = ? AND deleted = 0";
+		long start = System.nanoTime();
+		QuestionList ql;
+	    try (PooledConnection conn = pool.borrow()) {
+	    	PreparedStatement pstmt = conn.prepareCached(query);
 	    	pstmt.setString(1, currentUser);
-	    	
-	        ResultSet rs = pstmt.executeQuery();
-	        
-	        String data = "";
-	        int index = 1;
-	        
-	        ArrayList<String> questions = new ArrayList<String>();
-	        ArrayList<Integer> db_ids = new ArrayList<Integer>();
-	        db_ids.add(null); // Fill index 0 of ArrayList with null
-	        
-	        while (rs.next()) {
-	        	data += index + ". ";
-	            data += rs.getString("title");
-	            if (rs.getInt("resolved") == 1) {
-	            	data += " (Resolved)" + "\n";
-	            } else {
-	            	data += " (Unresolved)" + "\n";
-	            }
-	            data += "Posted by: " + rs.getString("postedBy") + "\n";
-	            data += rs.getString("text");
-	            data += "\n------------------------------------------\n";
-	            questions.add(data);
-	            db_ids.add(rs.getInt("id"));
-	            index++;
-	            data = "";
-	        }
-	        
-	        QuestionList ql = new QuestionList(questions, db_ids);
-	        return ql;
-	    } catch (SQLException e) {
-	        e.printStackTrace();
+	        ql = new QuestionList(readQuestions(pstmt), true);
+	    } catch (SQLException | RuntimeException e) {
+	    	questionsByUserMetrics.recordFailure(start);
+	    	throw e;
 	    }
-	    return null; // If no user exists or an error occurs
+	    questionsByUserMetrics.record(start, ql.getQuestions().size());
+	    return ql;
+	}
+	
+	// Search question threads through the inverted index and return the best matches
+	public QuestionList searchQuestions(String query) {
+		return searchQuestions(query, DEFAULT_SEARCH_RESULTS);
+	}
+	
+	// Rank matches with BM25 and fetch only the top k questions, most relevant first
+	public QuestionList searchQuestions(String query, int k) {
+		return orNull(() -> fetchSearchResults(query, k));
+	}
+	
+	QuestionList fetchSearchResults(String query, int k) throws SQLException {
+		long start = System.nanoTime();
+		List<SearchIndex.SearchHit> hits = searchIndex.rank(query, k);
+		ArrayList<Question> questions = new ArrayList<Question>(hits.size());
+		if (hits.isEmpty()) {
+			searchMetrics.record(start, 0);
+			return new QuestionList(questions);
+		}
+		Integer[] ids = new Integer[hits.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = hits.get(i).getQuestionId();
+		}
+		String sql = "SELECT * FROM questions WHERE id = ANY(?) AND deleted = 0";
+		Map<Integer, Question> byId = new HashMap<Integer, Question>();
+		try (PooledConnection conn = pool.borrow()) {
+			PreparedStatement pstmt = conn.prepareCached(sql);
+			pstmt.setArray(1, conn.getConnection().createArrayOf("INTEGER", ids));
+			for (Question q : readQuestions(pstmt)) {
+				byId.put(q.getId(), q);
+			}
+		} catch (SQLException | RuntimeException e) {
+			searchMetrics.recordFailure(start);
+			throw e;
+		}
+		for (Integer id : ids) {
+			if (byId.containsKey(id)) {
+				questions.add(byId.get(id));
+			}
+		}
+		searchMetrics.record(start, questions.size());
+		return new QuestionList(questions);
+	}
+	
+	// A read that may fail with an SQLException
+	interface SqlCall<T> {
+		T call() throws SQLException;
+	}
+	
+	// Run a read for the console, reporting a failure and returning null instead of throwing
+	private static <T> T orNull(SqlCall<T> call) {
+		try {
+			return call.call();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return null; // If an error occurs
+	}
+	
+	// Load every question and answer into the search index
+	private void rebuildSearchIndex() throws SQLException {
+		searchIndex.clear();
+		forEachQuestion(q -> {
+			searchIndex.indexQuestion(q.getId(), q.getTitle(), q.getText());
+			searchIndex.setResolved(q.getId(), q.getResolved());
+		});
+		forEachAnswer(a -> searchIndex.indexAnswer(a.getId(), a.getUnderQuestion(), a.getText()));
+	}
+	
+	// Stream every question in id order to the handler without materializing the table
+	public void forEachQuestion(RowHandler<Question> handler) throws SQLException {
+		streamRows("SELECT * FROM questions WHERE deleted = 0 ORDER BY id", rs -> handler.handle(readQuestion(rs)));
+	}
+	
+	// Stream every answer in id order to the handler without materializing the table
+	public void forEachAnswer(RowHandler<Answer> handler) throws SQLException {
+		streamRows("SELECT * FROM answers a WHERE NOT EXISTS "
+				+ "(SELECT 1 FROM questions q WHERE q.id = a.underQuestion AND q.deleted = 1) ORDER BY id",
+				rs -> handler.handle(readAnswer(rs)));
+	}
+	
+	// Run a query on a forward-only cursor with lazy execution, so H2 produces rows as they are read
+	private void streamRows(String query, RowHandler<ResultSet> handler) throws SQLException {
+		try (PooledConnection conn = pool.borrow();
+				Statement statement = conn.getConnection().createStatement(
+						ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			statement.execute("SET LAZY_QUERY_EXECUTION TRUE");
+			try {
+				statement.setFetchSize(STREAM_FETCH_SIZE);
+				try (ResultSet rs = statement.executeQuery(query)) {
+					while (rs.next()) {
+						handler.handle(rs);
+					}
+				}
+			} catch (SQLException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new SQLException("Row handler failed: " + e.getMessage(), e);
+			} finally {
+				statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+			}
+		}
+	}
+	
+	public SearchIndex getSearchIndex() { return searchIndex; }
+	
+	// Map each row of a questions query to a Question
+	private static ArrayList<Question> readQuestions(PreparedStatement pstmt) throws SQLException {
+		ArrayList<Question> questions = new ArrayList<Question>();
+		try (ResultSet rs = pstmt.executeQuery()) {
+			while (rs.next()) {
+				questions.add(readQuestion(rs));
+			}
+		}
+		return questions;
+	}
+	
+	private static Question readQuestion(ResultSet rs) throws SQLException {
+		return new Question(rs.getInt("id"), rs.getString("title"), rs.getString("text"),
+				rs.getString("postedBy"), rs.getInt("resolved") == 1, rs.getInt("answerCount"),
+				rs.getInt("solutionCount"), rs.getObject("lastActivity", LocalDateTime.class));
+	}
+	
+	// Map each row of an answers query to an Answer
+	private static ArrayList<Answer> readAnswers(PreparedStatement pstmt) throws SQLException {
+		ArrayList<Answer> answers = new ArrayList<Answer>();
+		try (ResultSet rs = pstmt.executeQuery()) {
+			while (rs.next()) {
+				answers.add(readAnswer(rs));
+			}
+		}
+		return answers;
+	}
+	
+	private static Answer readAnswer(ResultSet rs) throws SQLException {
+		return new Answer(rs.getInt("id"), rs.getString("text"), rs.getString("postedBy"),
+				rs.getInt("underQuestion"), rs.getInt("isSolution") == 1);
 	}
 
-	// Update an answer
-	public void updateAnswer(int aid, String text) {
+	// Update an answer; the future tells whether the answer existed
+	public CompletableFuture<Boolean> updateAnswer(int aid, String text) {
 		String query = "UPDATE answers SET text = ? WHERE id = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		return tryWrite(updateAnswerMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCached(query);
+			Integer qid = questionOfAnswer(conn, aid);
 			pstmt.setString(1, text);
 			pstmt.setInt(2, aid);
-			pstmt.executeUpdate();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+			return pstmt.executeUpdate() > 0 ? qid : null;
+		}, qid -> {
+			if (qid != null) {
+				searchIndex.updateAnswer(aid, text);
+				answerCache.invalidate(qid);
+			}
+		}).thenApply(Objects::nonNull);
 	}
 	
-	// Delete an answer
-	public void deleteAnswer(int aid) {
+	// Delete an answer and take it off its question's counters
+	public CompletableFuture<Boolean> deleteAnswer(int aid) {
 		String query = "DELETE answers WHERE id = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+		return tryWrite(deleteAnswerMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCached(query);
+			int[] answer = lockAnswer(conn, aid);
+			if (answer == null) {
+				return null;
+			}
 			pstmt.setInt(1, aid);
-			pstmt.execute();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+			pstmt.executeUpdate();
+			updateAnswerCounts(conn, answer[0], -1, -answer[1]);
+			return answer[0];
+		}, qid -> {
+			if (qid != null) {
+				searchIndex.removeAnswer(aid);
+				answerCache.invalidate(qid);
+			}
+		}).thenApply(Objects::nonNull);
 	}
 	
-	// Mark an answer as solution
-	public void markAnswerAsSolution(int aid) {
+	// Mark an answer as solution, counting it on its question unless it already was one
+	public CompletableFuture<Boolean> markAnswerAsSolution(int aid) {
 		String query = "UPDATE answers SET isSolution = ? WHERE id = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-			pstmt.setInt(1, 1);
-			pstmt.setInt(2, aid);
-			pstmt.executeUpdate();
-		} catch (SQLException e) {
-			e.printStackTrace();
+		return tryWrite(markSolutionMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCached(query);
+			int[] answer = lockAnswer(conn, aid);
+			if (answer == null) {
+				return null;
+			}
+			if (answer[1] == 0) {
+				pstmt.setInt(1, 1);
+				pstmt.setInt(2, aid);
+				pstmt.executeUpdate();
+				updateAnswerCounts(conn, answer[0], 0, 1);
+			}
+			return answer[0];
+		}, qid -> {
+			if (qid != null) {
+				answerCache.invalidate(qid);
+			}
+		}).thenApply(Objects::nonNull);
+	}
+	
+	// Lock an answer row for the rest of the transaction and return its question and isSolution,
+	// or null if there is no such answer
+	private static int[] lockAnswer(PooledConnection conn, int aid) throws SQLException {
+		PreparedStatement pstmt = conn.prepareCached("SELECT underQuestion, isSolution FROM answers WHERE id = ? FOR UPDATE");
+		pstmt.setInt(1, aid);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			return rs.next() ? new int[] {rs.getInt(1), rs.getInt(2)} : null;
+		}
+	}
+	
+	// Returns 0 if the question does not exist or has been deleted
+	private static int updateAnswerCounts(PooledConnection conn, int qid, int answers, int solutions) throws SQLException {
+		PreparedStatement pstmt = conn.prepareCached(UPDATE_ANSWER_COUNTS);
+		pstmt.setInt(1, answers);
+		pstmt.setInt(2, solutions);
+		pstmt.setInt(3, qid);
+		return pstmt.executeUpdate();
+	}
+	
+	// Find the question an answer is posted under, so its cached thread can be invalidated
+	private static Integer questionOfAnswer(PooledConnection conn, int aid) throws SQLException {
+		PreparedStatement pstmt = conn.prepareCached("SELECT underQuestion FROM answers WHERE id = ?");
+		pstmt.setInt(1, aid);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			return rs.next() ? rs.getInt(1) : null;
 		}
 	}
 	
 	// Update a question
-	public void updateQuestion(int qid, String title, String text) {
-		String query = "UPDATE questions SET title = ?, text = ? WHERE id = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+	public CompletableFuture<Boolean> updateQuestion(int qid, String title, String text) {
+		String query = "UPDATE questions SET title = ?, text = ? WHERE id = ? AND deleted = 0";
+		return tryWrite(updateQuestionMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCached(query);
 			pstmt.setString(1, title);
 			pstmt.setString(2, text);
 			pstmt.setInt(3, qid);
-			pstmt.executeUpdate();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+			return pstmt.executeUpdate() > 0;
+		}, updated -> {
+			if (updated) {
+				searchIndex.indexQuestion(qid, title, text);
+				answerCache.invalidate(qid);
+			}
+		});
 	}
 	
 	// Mark a question as resolved
-	public void markQuestionAsResolved(int qid) {
-		String query = "UPDATE questions SET resolved = ? WHERE id = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+	public CompletableFuture<Boolean> markQuestionAsResolved(int qid) {
+		String query = "UPDATE questions SET resolved = ? WHERE id = ? AND deleted = 0";
+		return tryWrite(resolveQuestionMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCached(query);
 			pstmt.setInt(1, 1);
 			pstmt.setInt(2, qid);
-			pstmt.executeUpdate();
-		} catch (SQLException e) {
-			e.printStackTrace();
+			return pstmt.executeUpdate() > 0;
+		}, updated -> {
+			if (updated) {
+				searchIndex.setResolved(qid, true);
+				answerCache.invalidate(qid);
+			}
+		});
+	}
+	
+	// Mark an answer as the solution and its question as resolved in one transaction. The answer
+	// is only marked if it is posted under qid and that question is not deleted, so a stale or
+	// mismatched pair changes nothing.
+	public CompletableFuture<ResolveResult> resolveWithSolution(int qid, int aid) {
+		String markSolution = "UPDATE answers SET isSolution = 1 WHERE id = ? AND underQuestion = ? AND isSolution = 0 "
+				+ "AND underQuestion IN (SELECT id FROM questions WHERE deleted = 0)";
+		String resolve = "UPDATE questions SET resolved = 1, solutionCount = solutionCount + ?, "
+				+ "lastActivity = CURRENT_TIMESTAMP WHERE id = ? AND deleted = 0";
+		return tryWrite(resolveWithSolutionMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCached(markSolution);
+			pstmt.setInt(1, aid);
+			pstmt.setInt(2, qid);
+			int marked = pstmt.executeUpdate();
+			if (marked == 0 && !isAnswerUnder(conn, aid, qid)) {
+				return ResolveResult.CONFLICT;
+			}
+			pstmt = conn.prepareCached(resolve);
+			pstmt.setInt(1, marked);
+			pstmt.setInt(2, qid);
+			return pstmt.executeUpdate() == 0 ? ResolveResult.NOT_FOUND : ResolveResult.RESOLVED;
+		}, result -> {
+			if (result == ResolveResult.RESOLVED) {
+				answerCache.invalidate(qid);
+				searchIndex.setResolved(qid, true);
+			}
+		});
+	}
+	
+	// Tells an answer that is already the solution apart from a conflict when the conditional update matched nothing
+	private static boolean isAnswerUnder(PooledConnection conn, int aid, int qid) throws SQLException {
+		PreparedStatement pstmt = conn.prepareCached("SELECT 1 FROM answers WHERE id = ? AND underQuestion = ?");
+		pstmt.setInt(1, aid);
+		pstmt.setInt(2, qid);
+		try (ResultSet rs = pstmt.executeQuery()) {
+			return rs.next();
 		}
 	}
 	
-	// Delete a question
-	public void deleteQuestion(int qid) {
-		String query = "UPDATE questions SET title = ?, text = ?, postedBy = ? WHERE id = ?";
-		try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-			pstmt.setString(1, "This question has been deleted.");
-			pstmt.setString(2, "--");
-			pstmt.setString(3, "--");
-			pstmt.setInt(4, qid);
-			pstmt.execute();
+	// Delete a question by marking it as a tombstone; the compactor removes it and its answers later
+	public CompletableFuture<Boolean> deleteQuestion(int qid) {
+		String query = "UPDATE questions SET deleted = 1 WHERE id = ? AND deleted = 0";
+		return tryWrite(deleteQuestionMetrics, conn -> {
+			PreparedStatement pstmt = conn.prepareCached(query);
+			pstmt.setInt(1, qid);
+			return pstmt.executeUpdate() > 0;
+		}, deleted -> {
+			if (deleted) {
+				searchIndex.removeQuestion(qid);
+				answerCache.invalidate(qid);
+			}
+		});
+	}
+	
+	// Run a mutation in its own transaction now, or queue it when write-behind is enabled.
+	// afterCommit updates the in-memory search index and caches once the change is committed.
+	private <T> CompletableFuture<T> write(DbMetrics.Operation op, SqlWork<T> work, Consumer<T> afterCommit) throws SQLException {
+		long start = System.nanoTime();
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null) {
+			return queue.submit(work, afterCommit).whenComplete((result, error) -> {
+				if (error == null) {
+					op.record(start, rowsWritten(result));
+				} else {
+					op.recordFailure(start);
+				}
+			});
+		}
+		T result;
+		try (PooledConnection conn = pool.borrow()) {
+			result = conn.inTransaction(work);
+		} catch (SQLException | RuntimeException e) {
+			op.recordFailure(start);
+			throw e;
+		}
+		afterCommit.accept(result);
+		op.record(start, rowsWritten(result));
+		return CompletableFuture.completedFuture(result);
+	}
+	
+	// A write result of false, null, a conflict or a missing question means no row was changed
+	private static int rowsWritten(Object result) {
+		return result == null || Boolean.FALSE.equals(result)
+				|| result == ResolveResult.CONFLICT || result == ResolveResult.NOT_FOUND ? 0 : 1;
+	}
+	
+	// Like write(), but report a synchronous failure and return it as a failed future
+	private <T> CompletableFuture<T> tryWrite(DbMetrics.Operation op, SqlWork<T> work, Consumer<T> afterCommit) {
+		try {
+			return write(op, work, afterCommit);
 		} catch (SQLException e) {
 			e.printStackTrace();
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+	
+	public void enableWriteBehind() {
+		enableWriteBehind(DEFAULT_WRITE_QUEUE_CAPACITY, DEFAULT_GROUP_COMMIT_SIZE,
+				DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_QUEUE_OFFER_TIMEOUT_MILLIS);
+	}
+	
+	// Queue writes and group-commit them on a background writer instead of committing each one
+	// on the caller's thread. Each write method's future completes when its write is durable.
+	public void enableWriteBehind(int capacity, int maxBatch, long flushIntervalMillis, long offerTimeoutMillis) {
+		if (writeBehind == null) {
+			writeBehind = new WriteBehindQueue(pool, capacity, maxBatch, flushIntervalMillis, offerTimeoutMillis);
+		}
+	}
+	
+	// Compact every minute in batches of the default size, archiving what is removed
+	public void enableCompaction() {
+		enableCompaction(DEFAULT_COMPACTION_PERIOD_MILLIS, Compactor.DEFAULT_BATCH_SIZE, true);
+	}
+	
+	// Remove deleted questions and their answers every periodMillis in the background, in
+	// transactions of at most batchSize rows, copying them to the archive tables if archive is set.
+	// If compactTombstones already created the compactor, it is started with its default settings.
+	public synchronized void enableCompaction(long periodMillis, int batchSize, boolean archive) {
+		if (compactor == null) {
+			compactor = newCompactor(batchSize, archive);
+		}
+		compactor.start(periodMillis);
+	}
+	
+	// Remove deleted questions and their answers now; returns how many questions were removed.
+	// Every call shares one compactor with the background compaction, so runs never overlap.
+	public int compactTombstones() throws SQLException {
+		Compactor c;
+		synchronized (this) {
+			if (compactor == null) {
+				compactor = newCompactor(Compactor.DEFAULT_BATCH_SIZE, true);
+			}
+			c = compactor;
+		}
+		return c.compact();
+	}
+	
+	private Compactor newCompactor(int batchSize, boolean archive) {
+		if (pool == null) {
+			throw new IllegalStateException("Connect to the database before compacting it");
+		}
+		return new Compactor(pool, batchSize, archive, qid -> {
+			searchIndex.removeQuestion(qid);
+			answerCache.invalidate(qid);
+		});
+	}
+	
+	// Wait until every queued write has been committed
+	public void flushWrites() throws SQLException {
+		WriteBehindQueue queue = writeBehind;
+		if (queue != null) {
+			queue.flush();
 		}
 	}
 
-	// Closes the database connection and statement.
+	// Commits any queued writes, then closes every pooled database connection.
+	// An isolated in-memory database is dropped along with them.
 	public void closeConnection() {
-		try{ 
-			if(statement!=null) statement.close(); 
-		} catch(SQLException se2) { 
-			se2.printStackTrace();
-		} 
-		try { 
-			if(connection!=null) connection.close(); 
-		} catch(SQLException se){ 
-			se.printStackTrace(); 
-		} 
+		synchronized (this) {
+			if (compactor != null) {
+				compactor.close();
+				compactor = null;
+			}
+		}
+		if (writeBehind != null) {
+			try {
+				writeBehind.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			writeBehind = null;
+		}
+		disableSlowQueryLog();
+		if (pool != null) {
+			if (storage.isIsolated()) {
+				try (PooledConnection conn = pool.borrow(); Statement statement = conn.createStatement()) {
+					statement.execute("SHUTDOWN");
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+			pool.close();
+			pool = null;
+		}
 	}
 
 }
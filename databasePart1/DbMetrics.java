@@ -0,0 +1,201 @@
+package databasePart1;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * The DbMetrics class records the count, failures, rows returned and latency of every
+ * DatabaseHelper operation, and reports them together with the connection pool and cache
+ * counters. Recording only bumps striped counters and histogram buckets, so it takes no
+ * locks and allocates nothing, and it can stay on in production.
+ *
+ * The metrics can be read through JMX, with one MBean per operation and one for the
+ * connection pool under the "databasePart1" domain, or printed periodically as text.
+ */
+public class DbMetrics {
+
+	/**
+	 * The JMX view of one operation; latencies are in milliseconds.
+	 */
+	public interface OperationMBean {
+		long getCount();
+		long getErrors();
+		long getRows();
+		double getMeanMillis();
+		double getP50Millis();
+		double getP99Millis();
+		double getP999Millis();
+		double getMaxMillis();
+	}
+
+	/**
+	 * The JMX view of the connection pool, prepared statements and caches.
+	 */
+	public interface DatabaseMBean {
+		int getIdleConnections();
+		int getBorrowedConnections();
+		long getConnectionsOpened();
+		long getConnectionsClosed();
+		long getBorrows();
+		long getBorrowTimeouts();
+		long getLeaksReported();
+		double getBorrowWaitP99Millis();
+		long getStatementsPrepared();
+		long getStatementsClosed();
+		double getStatementCacheHitRate();
+		double getAnswerCacheHitRate();
+	}
+
+	/**
+	 * The counters of one operation.
+	 */
+	public static class Operation implements OperationMBean {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		// Record a successful call that started at startNanos and returned the given number of rows
+		public void record(long startNanos, int rowCount) {
+			latency.record(System.nanoTime() - startNanos);
+			count.increment();
+			rows.add(rowCount);
+		}
+
+		public void recordFailure(long startNanos) {
+			latency.record(System.nanoTime() - startNanos);
+			count.increment();
+			errors.increment();
+		}
+
+		public LatencyHistogram getLatency() { return latency; }
+		public long getCount() { return count.sum(); }
+		public long getErrors() { return errors.sum(); }
+		public long getRows() { return rows.sum(); }
+		public double getMeanMillis() { return latency.getMean() / 1e6; }
+		public double getP50Millis() { return latency.getValueAtPercentile(50) / 1e6; }
+		public double getP99Millis() { return latency.getValueAtPercentile(99) / 1e6; }
+		public double getP999Millis() { return latency.getValueAtPercentile(99.9) / 1e6; }
+		public double getMaxMillis() { return latency.getMax() / 1e6; }
+	}
+
+	private final Map<String, Operation> operations = new ConcurrentSkipListMap<String, Operation>();
+	private final Supplier<ConnectionPool> pool;
+	private final Supplier<AnswerThreadCache> answerCache;
+	private ScheduledExecutorService reporter;
+
+	DbMetrics(Supplier<ConnectionPool> pool, Supplier<AnswerThreadCache> answerCache) {
+		this.pool = pool;
+		this.answerCache = answerCache;
+	}
+
+	// The counters of the named operation, created on first use
+	public Operation operation(String name) {
+		Operation op = operations.get(name);
+		return op != null ? op : operations.computeIfAbsent(name, n -> new Operation());
+	}
+
+	public Map<String, Operation> getOperations() { return operations; }
+
+	// Register the MBeans under the given name, replacing any registered earlier under it
+	public void registerMBeans(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (Map.Entry<String, Operation> e : operations.entrySet()) {
+			register(server, new ObjectName("databasePart1:type=Operation,db=" + name + ",name=" + e.getKey()),
+					new StandardMBean(e.getValue(), OperationMBean.class));
+		}
+		register(server, new ObjectName("databasePart1:type=Database,name=" + name),
+				new StandardMBean(new DatabaseView(), DatabaseMBean.class));
+	}
+
+	private static void register(MBeanServer server, ObjectName name, Object mbean) throws JMException {
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(mbean, name);
+	}
+
+	// Print the report every periodMillis on a daemon thread until stopReporting()
+	public synchronized void startReporting(long periodMillis, PrintStream out) {
+		stopReporting();
+		reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "db-metrics-reporter");
+			t.setDaemon(true);
+			return t;
+		});
+		reporter.scheduleAtFixedRate(() -> out.print(report()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stopReporting() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+	}
+
+	// A text report of every operation followed by the pool and cache counters
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-26s %9s %7s %10s %9s %9s %9s %9s%n", "operation", "count", "errors",
+				"rows", "mean ms", "p50 ms", "p99 ms", "max ms"));
+		for (Map.Entry<String, Operation> e : operations.entrySet()) {
+			Operation op = e.getValue();
+			sb.append(String.format("%-26s %9d %7d %10d %9.3f %9.3f %9.3f %9.3f%n", e.getKey(), op.getCount(),
+					op.getErrors(), op.getRows(), op.getMeanMillis(), op.getP50Millis(), op.getP99Millis(),
+					op.getMaxMillis()));
+		}
+		DatabaseView db = new DatabaseView();
+		sb.append(String.format("connections: %d idle, %d borrowed, %d opened, %d closed, %d borrows, "
+				+ "%d timeouts, %d leaks, borrow wait p99 %.3f ms%n", db.getIdleConnections(),
+				db.getBorrowedConnections(), db.getConnectionsOpened(), db.getConnectionsClosed(), db.getBorrows(),
+				db.getBorrowTimeouts(), db.getLeaksReported(), db.getBorrowWaitP99Millis()));
+		sb.append(String.format("statements: %d prepared, %d closed, cache hit rate %.3f; answer cache hit rate %.3f%n",
+				db.getStatementsPrepared(), db.getStatementsClosed(), db.getStatementCacheHitRate(),
+				db.getAnswerCacheHitRate()));
+		return sb.toString();
+	}
+
+	// Reads the counters of whichever pool is current, or zeros while disconnected
+	private class DatabaseView implements DatabaseMBean {
+		private ConnectionPool.Stats stats() {
+			ConnectionPool p = pool.get();
+			return p == null ? new ConnectionPool.Stats() : p.getStats();
+		}
+
+		private StatementCache.Stats statements() {
+			ConnectionPool p = pool.get();
+			return p == null ? new StatementCache.Stats() : p.getStatementCacheStats();
+		}
+
+		public int getIdleConnections() {
+			ConnectionPool p = pool.get();
+			return p == null ? 0 : p.getIdleCount();
+		}
+		public int getBorrowedConnections() {
+			ConnectionPool p = pool.get();
+			return p == null ? 0 : p.getBorrowedCount();
+		}
+		public long getConnectionsOpened() { return stats().getOpened(); }
+		public long getConnectionsClosed() { return stats().getClosed(); }
+		public long getBorrows() { return stats().getBorrows(); }
+		public long getBorrowTimeouts() { return stats().getBorrowTimeouts(); }
+		public long getLeaksReported() { return stats().getLeaks(); }
+		public double getBorrowWaitP99Millis() { return stats().getBorrowWait().getValueAtPercentile(99) / 1e6; }
+		public long getStatementsPrepared() { return statements().getMisses(); }
+		public long getStatementsClosed() { return statements().getClosed(); }
+		public double getStatementCacheHitRate() { return statements().getHitRate(); }
+		public double getAnswerCacheHitRate() { return answerCache.get().getHitRate(); }
+	}
+}
@@ -0,0 +1,183 @@
+package databasePart1;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Json class reads and writes the flat JSON objects used by the import/export tool,
+ * one object per line. Values may be strings, numbers, booleans or null; nested objects
+ * and arrays are not supported when parsing.
+ */
+public class Json {
+
+	private final String text;
+	private int pos = 0;
+
+	private Json(String text) {
+		this.text = text;
+	}
+
+	// Parse a single flat JSON object; numbers are returned as Long or Double
+	public static Map<String, Object> parseObject(String text) {
+		Json parser = new Json(text);
+		Map<String, Object> object = parser.readObject();
+		parser.skipWhitespace();
+		if (parser.pos != text.length()) {
+			throw parser.error("Unexpected trailing characters");
+		}
+		return object;
+	}
+
+	// Append a JSON string literal, escaping quotes, backslashes and control characters
+	public static StringBuilder quote(StringBuilder sb, String value) {
+		if (value == null) {
+			return sb.append("null");
+		}
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"');
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		skipWhitespace();
+		expect('{');
+		skipWhitespace();
+		if (peek() == '}') {
+			pos++;
+			return object;
+		}
+		while (true) {
+			skipWhitespace();
+			String key = readString();
+			skipWhitespace();
+			expect(':');
+			skipWhitespace();
+			object.put(key, readValue());
+			skipWhitespace();
+			char c = next();
+			if (c == '}') {
+				return object;
+			}
+			if (c != ',') {
+				throw error("Expected ',' or '}'");
+			}
+		}
+	}
+
+	private Object readValue() {
+		char c = peek();
+		if (c == '"') {
+			return readString();
+		}
+		if (text.startsWith("true", pos)) {
+			pos += 4;
+			return Boolean.TRUE;
+		}
+		if (text.startsWith("false", pos)) {
+			pos += 5;
+			return Boolean.FALSE;
+		}
+		if (text.startsWith("null", pos)) {
+			pos += 4;
+			return null;
+		}
+		if (c == '-' || Character.isDigit(c)) {
+			int start = pos;
+			while (pos < text.length() && "+-.eE0123456789".indexOf(text.charAt(pos)) >= 0) {
+				pos++;
+			}
+			String number = text.substring(start, pos);
+			try {
+				if (number.contains(".") || number.contains("e") || number.contains("E")) {
+					return Double.valueOf(number);
+				}
+				return Long.valueOf(number);
+			} catch (NumberFormatException e) {
+				throw error("Invalid number " + number);
+			}
+		}
+		throw error("Unsupported value");
+	}
+
+	private String readString() {
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			char c = next();
+			if (c == '"') {
+				return sb.toString();
+			}
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			char escaped = next();
+			switch (escaped) {
+			case '"': case '\\': case '/': sb.append(escaped); break;
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'u':
+				if (pos + 4 > text.length()) {
+					throw error("Truncated unicode escape");
+				}
+				try {
+					sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+				} catch (NumberFormatException e) {
+					throw error("Invalid unicode escape");
+				}
+				pos += 4;
+				break;
+			default:
+				throw error("Invalid escape \\" + escaped);
+			}
+		}
+	}
+
+	private void skipWhitespace() {
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	private char peek() {
+		if (pos >= text.length()) {
+			throw error("Unexpected end of input");
+		}
+		return text.charAt(pos);
+	}
+
+	private char next() {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void expect(char c) {
+		if (next() != c) {
+			throw error("Expected '" + c + "'");
+		}
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+}
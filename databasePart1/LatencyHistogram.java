@@ -0,0 +1,104 @@
+package databasePart1;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class records latencies in nanoseconds from many threads at once
+ * without locking, and answers percentile queries over everything recorded so far.
+ *
+ * Values are counted in log-linear buckets in the style of HdrHistogram: every power of two
+ * is split into 2^SUB_BUCKET_BITS equal buckets, so a reported percentile is within 1%
+ * of the recorded value across the whole range of a long, in a fixed 58 KB of counters.
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 7;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		long mantissa = value >>> (exponent - SUB_BUCKET_BITS);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) (mantissa - SUB_BUCKETS);
+	}
+
+	// The highest value that falls into a bucket
+	static long highestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int octave = bucket / SUB_BUCKETS;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << (octave - 1);
+		long width = 1L << (octave - 1);
+		return lowest + width - 1 < 0 ? Long.MAX_VALUE : lowest + width - 1;
+	}
+
+	public long getCount() { return count.sum(); }
+	public long getMax() { return max.get(); }
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0.0 : (double) total.sum() / n;
+	}
+
+	// The latency at or below which the given percentage (0-100) of recorded values fall
+	public long getValueAtPercentile(double percentile) {
+		long n = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			n += snapshot[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	// Add everything recorded by another histogram to this one
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c != 0) {
+				counts.addAndGet(i, c);
+			}
+		}
+		count.add(other.count.sum());
+		total.add(other.total.sum());
+		max.accumulate(other.getMax());
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+}
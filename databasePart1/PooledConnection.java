@@ -0,0 +1,125 @@
+package databasePart1;
+
+import java.sql.*;
+
+/**
+ * The PooledConnection class wraps a physical JDBC connection owned by a ConnectionPool.
+ * Closing it returns the connection to the pool instead of closing it, so it can be
+ * used in a try-with-resources block around each CRUD operation. Each pooled connection
+ * keeps its own cache of prepared statements.
+ */
+public class PooledConnection implements AutoCloseable {
+	private final ConnectionPool pool;
+	private final Connection connection;
+	private final StatementCache statements;
+	private volatile long lastUsed;
+	private volatile long borrowedAt;
+	private volatile Throwable borrowSite;
+	private volatile boolean inUse = false;
+	private volatile boolean leakReported = false;
+
+	PooledConnection(ConnectionPool pool, Connection connection, StatementCache statements) {
+		this.pool = pool;
+		this.connection = connection;
+		this.statements = statements;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	public Connection getConnection() { return connection; }
+
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return timed(connection.prepareStatement(sql), sql);
+	}
+
+	// Return a cached prepared statement; callers must close its result sets but not the statement
+	public PreparedStatement prepareCached(String sql) throws SQLException {
+		return timed(statements.get(connection, sql, false), sql);
+	}
+
+	// Return a cached prepared statement whose getGeneratedKeys() yields the inserted ids
+	public PreparedStatement prepareCachedReturningKeys(String sql) throws SQLException {
+		return timed(statements.get(connection, sql, true), sql);
+	}
+
+	// Route the statement through the pool's slow-query log, if one is enabled
+	private PreparedStatement timed(PreparedStatement pstmt, String sql) {
+		SlowQueryLog log = pool.getSlowQueryLog();
+		return log == null ? pstmt : log.wrap(pstmt, sql);
+	}
+
+	public Statement createStatement() throws SQLException {
+		return connection.createStatement();
+	}
+
+	// Run the work in its own transaction, rolling back if it fails
+	public <T> T inTransaction(SqlWork<T> work) throws SQLException {
+		connection.setAutoCommit(false);
+		try {
+			T result = work.execute(this);
+			connection.commit();
+			return result;
+		} catch (SQLException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	// Return the connection to its pool
+	@Override
+	public void close() {
+		if (inUse) {
+			inUse = false;
+			pool.release(this);
+		}
+	}
+
+	void markBorrowed(boolean recordSite) {
+		inUse = true;
+		leakReported = false;
+		borrowedAt = System.currentTimeMillis();
+		borrowSite = recordSite ? new Throwable("Connection borrowed here") : null;
+	}
+
+	// Undo any transaction state left behind by the borrower; returns false if the connection is broken
+	boolean reset() {
+		lastUsed = System.currentTimeMillis();
+		borrowSite = null;
+		statements.closeEvicted();
+		try {
+			if (connection.isClosed()) {
+				return false;
+			}
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	// Returns true the first time a leak is flagged for the current borrow
+	boolean flagLeak() {
+		if (leakReported) {
+			return false;
+		}
+		leakReported = true;
+		return true;
+	}
+
+	void closePhysical() {
+		statements.closeAll();
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	long getLastUsed() { return lastUsed; }
+	long getBorrowedAt() { return borrowedAt; }
+	Throwable getBorrowSite() { return borrowSite; }
+}
@@ -0,0 +1,9 @@
+package databasePart1;
+
+/**
+ * The RowHandler interface receives rows one at a time while DatabaseHelper streams
+ * a table, so callers never have to hold the whole result in memory.
+ */
+public interface RowHandler<T> {
+	void handle(T row) throws Exception;
+}
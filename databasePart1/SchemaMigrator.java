@@ -0,0 +1,141 @@
+package databasePart1;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SchemaMigrator class brings the database schema up to date when the application
+ * connects. Each migration has a version number and is applied at most once, in order;
+ * the versions already applied are recorded in the schema_version table.
+ * H2 commits DDL implicitly, so every migration statement is written to be safe to re-run.
+ */
+public class SchemaMigrator {
+
+	/**
+	 * A single versioned schema change.
+	 */
+	public static class Migration {
+		private final int version;
+		private final String description;
+		private final String[] statements;
+
+		public Migration(int version, String description, String... statements) {
+			this.version = version;
+			this.description = description;
+			this.statements = statements;
+		}
+
+		public int getVersion() { return version; }
+		public String getDescription() { return description; }
+		public String[] getStatements() { return statements; }
+	}
+
+	// The ordered list of migrations; append new ones with the next version number
+	static List<Migration> migrations() {
+		List<Migration> migrations = new ArrayList<Migration>();
+		migrations.add(new Migration(1, "Create questions and answers tables",
+				"CREATE TABLE IF NOT EXISTS questions ("
+						+ "id INT AUTO_INCREMENT PRIMARY KEY, "
+						+ "title VARCHAR(255), "
+						+ "text VARCHAR(500), "
+						+ "postedBy VARCHAR(255), "
+						+ "resolved INT)",
+				"CREATE TABLE IF NOT EXISTS answers ("
+						+ "id INT AUTO_INCREMENT PRIMARY KEY, "
+						+ "text VARCHAR(500), "
+						+ "postedBy VARCHAR(255), "
+						+ "underQuestion INT, "
+						+ "isSolution INT)"));
+		migrations.add(new Migration(2, "Index answer and question lookups",
+				"CREATE INDEX IF NOT EXISTS idx_answers_underQuestion ON answers (underQuestion)",
+				"CREATE INDEX IF NOT EXISTS idx_answers_postedBy ON answers (postedBy)",
+				"CREATE INDEX IF NOT EXISTS idx_questions_postedBy ON questions (postedBy)",
+				"CREATE INDEX IF NOT EXISTS idx_answers_underQuestion_isSolution ON answers (underQuestion, isSolution)"));
+		// The counters are kept up to date by the answer writes in DatabaseHelper, so that listings
+		// can show them without counting each question's answers
+		migrations.add(new Migration(3, "Add answer counters to questions",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS answerCount INT DEFAULT 0 NOT NULL",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS solutionCount INT DEFAULT 0 NOT NULL",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS lastActivity TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL",
+				"UPDATE questions q SET "
+						+ "answerCount = (SELECT COUNT(*) FROM answers a WHERE a.underQuestion = q.id), "
+						+ "solutionCount = (SELECT COUNT(*) FROM answers a WHERE a.underQuestion = q.id AND a.isSolution = 1)"));
+		// Deleted questions become tombstones that listings skip through the index, until the
+		// Compactor moves them and their answers to the archive tables
+		migrations.add(new Migration(4, "Add question tombstones and archive tables",
+				"ALTER TABLE questions ADD COLUMN IF NOT EXISTS deleted INT DEFAULT 0 NOT NULL",
+				"UPDATE questions SET deleted = 1 "
+						+ "WHERE title = 'This question has been deleted.' AND text = '--' AND postedBy = '--'",
+				"CREATE INDEX IF NOT EXISTS idx_questions_deleted_id ON questions (deleted, id)",
+				"CREATE TABLE IF NOT EXISTS questions_archive ("
+						+ "id INT PRIMARY KEY, "
+						+ "title VARCHAR(255), "
+						+ "text VARCHAR(500), "
+						+ "postedBy VARCHAR(255), "
+						+ "resolved INT, "
+						+ "archivedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+				"CREATE TABLE IF NOT EXISTS answers_archive ("
+						+ "id INT PRIMARY KEY, "
+						+ "text VARCHAR(500), "
+						+ "postedBy VARCHAR(255), "
+						+ "underQuestion INT, "
+						+ "isSolution INT, "
+						+ "archivedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"));
+		return migrations;
+	}
+
+	private final ConnectionPool pool;
+
+	public SchemaMigrator(ConnectionPool pool) {
+		this.pool = pool;
+	}
+
+	// Apply every migration newer than the recorded schema version; returns the resulting version
+	public int migrate() throws SQLException {
+		try (PooledConnection conn = pool.borrow(); Statement statement = conn.createStatement()) {
+			statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+					+ "version INT PRIMARY KEY, "
+					+ "description VARCHAR(255), "
+					+ "appliedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+
+			int current = currentVersion(statement);
+			for (Migration migration : migrations()) {
+				if (migration.getVersion() > current) {
+					apply(conn.getConnection(), statement, migration);
+					current = migration.getVersion();
+				}
+			}
+			return current;
+		}
+	}
+
+	private int currentVersion(Statement statement) throws SQLException {
+		try (ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+			rs.next();
+			return rs.getInt(1);
+		}
+	}
+
+	private void apply(Connection connection, Statement statement, Migration migration) throws SQLException {
+		connection.setAutoCommit(false);
+		try {
+			for (String sql : migration.getStatements()) {
+				statement.execute(sql);
+			}
+			try (PreparedStatement pstmt = connection.prepareStatement(
+					"INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+				pstmt.setInt(1, migration.getVersion());
+				pstmt.setString(2, migration.getDescription());
+				pstmt.executeUpdate();
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			throw new SQLException("Schema migration " + migration.getVersion() + " ("
+					+ migration.getDescription() + ") failed: " + e.getMessage(), e);
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+}
@@ -0,0 +1,485 @@
+package databasePart1;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * The SearchIndex class is an in-memory inverted index over question titles, question
+ * bodies and answer text. It maps every normalized term to the IDs of the questions whose
+ * thread contains it, and is updated incrementally by DatabaseHelper as content changes.
+ *
+ * Queries are whitespace-separated terms that must all match; the keyword OR separates
+ * alternative groups, and a trailing * turns a term into a prefix match.
+ * For example, "sql join OR database*" finds questions containing both "sql" and "join",
+ * or any word starting with "database".
+ *
+ * Ranked queries score the matching questions with BM25, weighting title matches higher and
+ * giving resolved questions a small boost, and keep only the best K in a bounded heap.
+ */
+public class SearchIndex {
+
+	// BM25 parameters and ranking boosts
+	static final double K1 = 1.2;
+	static final double B = 0.75;
+	static final double TITLE_BOOST = 2.0;
+	static final double RESOLVED_BOOST = 1.2;
+	// Upper bound on the number of index terms a single prefix term expands to when ranking;
+	// ranked queries only match a prefix through these terms
+	static final int MAX_PREFIX_EXPANSION = 64;
+
+	/**
+	 * A question ID with its relevance score.
+	 */
+	public static class SearchHit {
+		private final int questionId;
+		private final double score;
+
+		public SearchHit(int questionId, double score) {
+			this.questionId = questionId;
+			this.score = score;
+		}
+
+		public int getQuestionId() { return questionId; }
+		public double getScore() { return score; }
+	}
+
+	// The indexed content of one question thread, as term frequencies per field
+	private static class Document {
+		Map<String, Integer> title = Collections.emptyMap();
+		Map<String, Integer> body = Collections.emptyMap();
+		final Map<Integer, Map<String, Integer>> answers = new HashMap<Integer, Map<String, Integer>>();
+		final Map<String, Integer> total = new HashMap<String, Integer>();
+		int length;
+		boolean resolved;
+	}
+
+	private final Map<Integer, Document> documents = new HashMap<Integer, Document>();
+	private final TreeMap<String, Set<Integer>> postings = new TreeMap<String, Set<Integer>>();
+	private final Map<Integer, Integer> answerToQuestion = new HashMap<Integer, Integer>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private long totalLength = 0;
+
+	// Split text into lower-case terms of letters and digits
+	public static List<String> tokenize(String text) {
+		List<String> terms = new ArrayList<String>();
+		if (text == null) {
+			return terms;
+		}
+		StringBuilder term = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				term.append(Character.toLowerCase(c));
+			} else if (term.length() > 0) {
+				terms.add(term.toString());
+				term.setLength(0);
+			}
+		}
+		if (term.length() > 0) {
+			terms.add(term.toString());
+		}
+		return terms;
+	}
+
+	private static Map<String, Integer> termFrequencies(String text) {
+		Map<String, Integer> tf = new HashMap<String, Integer>();
+		for (String term : tokenize(text)) {
+			tf.merge(term, 1, Integer::sum);
+		}
+		return tf;
+	}
+
+	// Add a question, or replace its title and body while keeping its answers
+	public void indexQuestion(int qid, String title, String text) {
+		Map<String, Integer> titleTf = termFrequencies(title);
+		Map<String, Integer> bodyTf = termFrequencies(text);
+		lock.writeLock().lock();
+		try {
+			Document doc = documents.computeIfAbsent(qid, id -> new Document());
+			removeTerms(qid, doc, doc.title);
+			removeTerms(qid, doc, doc.body);
+			doc.title = titleTf;
+			doc.body = bodyTf;
+			addTerms(qid, doc, titleTf);
+			addTerms(qid, doc, bodyTf);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Remove a question and all of its answers from the index
+	public void removeQuestion(int qid) {
+		lock.writeLock().lock();
+		try {
+			Document doc = documents.remove(qid);
+			if (doc == null) {
+				return;
+			}
+			totalLength -= doc.length;
+			for (String term : doc.total.keySet()) {
+				removePosting(term, qid);
+			}
+			for (Integer aid : doc.answers.keySet()) {
+				answerToQuestion.remove(aid);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void setResolved(int qid, boolean resolved) {
+		lock.writeLock().lock();
+		try {
+			Document doc = documents.get(qid);
+			if (doc != null) {
+				doc.resolved = resolved;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Add an answer to its question's thread, or replace its text
+	public void indexAnswer(int aid, int qid, String text) {
+		Map<String, Integer> answerTf = termFrequencies(text);
+		lock.writeLock().lock();
+		try {
+			Document doc = documents.get(qid);
+			if (doc == null) {
+				return; // The question is not indexed, e.g. it has been deleted
+			}
+			Map<String, Integer> old = doc.answers.put(aid, answerTf);
+			if (old != null) {
+				removeTerms(qid, doc, old);
+			}
+			addTerms(qid, doc, answerTf);
+			answerToQuestion.put(aid, qid);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Replace the text of an already indexed answer
+	public void updateAnswer(int aid, String text) {
+		Integer qid;
+		lock.readLock().lock();
+		try {
+			qid = answerToQuestion.get(aid);
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (qid != null) {
+			indexAnswer(aid, qid, text);
+		}
+	}
+
+	public void removeAnswer(int aid) {
+		lock.writeLock().lock();
+		try {
+			Integer qid = answerToQuestion.remove(aid);
+			Document doc = qid == null ? null : documents.get(qid);
+			if (doc != null) {
+				removeTerms(qid, doc, doc.answers.remove(aid));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void addTerms(int qid, Document doc, Map<String, Integer> tf) {
+		for (Map.Entry<String, Integer> e : tf.entrySet()) {
+			doc.length += e.getValue();
+			totalLength += e.getValue();
+			if (doc.total.merge(e.getKey(), e.getValue(), Integer::sum).equals(e.getValue())) {
+				postings.computeIfAbsent(e.getKey(), t -> new HashSet<Integer>()).add(qid);
+			}
+		}
+	}
+
+	private void removeTerms(int qid, Document doc, Map<String, Integer> tf) {
+		if (tf == null) {
+			return;
+		}
+		for (Map.Entry<String, Integer> e : tf.entrySet()) {
+			doc.length -= e.getValue();
+			totalLength -= e.getValue();
+			Integer left = doc.total.merge(e.getKey(), -e.getValue(), Integer::sum);
+			if (left != null && left <= 0) {
+				doc.total.remove(e.getKey());
+				removePosting(e.getKey(), qid);
+			}
+		}
+	}
+
+	private void removePosting(String term, int qid) {
+		Set<Integer> ids = postings.get(term);
+		if (ids != null) {
+			ids.remove(qid);
+			if (ids.isEmpty()) {
+				postings.remove(term);
+			}
+		}
+	}
+
+	// Return the IDs of the questions matching the query, in ascending order
+	public SortedSet<Integer> search(String query) {
+		lock.readLock().lock();
+		try {
+			return new TreeSet<Integer>(matches(parse(query)));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Return the K most relevant questions matching the query, best first. A prefix term matches
+	// and scores through the same MAX_PREFIX_EXPANSION terms, and each group's candidates are
+	// scored straight from the postings of its rarest term into the bounded heap.
+	public List<SearchHit> rank(String query, int k) {
+		List<List<String>> groups = parse(query);
+		PriorityQueue<SearchHit> best = new PriorityQueue<SearchHit>(Math.max(1, k),
+				Comparator.comparingDouble(SearchHit::getScore).thenComparing(h -> -h.getQuestionId()));
+		lock.readLock().lock();
+		try {
+			if (documents.isEmpty() || k <= 0) {
+				return new ArrayList<SearchHit>();
+			}
+			// The expansions of every term of each group, in query order
+			List<List<Collection<String>>> expanded = new ArrayList<List<Collection<String>>>();
+			Map<String, Double> idf = new HashMap<String, Double>();
+			for (List<String> group : groups) {
+				List<Collection<String>> terms = new ArrayList<Collection<String>>();
+				for (String term : group) {
+					Collection<String> expansion = expand(term);
+					terms.add(expansion);
+					for (String t : expansion) {
+						int df = postings.get(t).size();
+						idf.put(t, Math.log(1 + (documents.size() - df + 0.5) / (df + 0.5)));
+					}
+				}
+				expanded.add(terms);
+			}
+			double avgLength = Math.max(1.0, (double) totalLength / documents.size());
+			for (int g = 0; g < expanded.size(); g++) {
+				List<Collection<String>> group = expanded.get(g);
+				Collection<String> driver = rarest(group);
+				List<String> seenTerms = new ArrayList<String>();
+				for (String term : driver) {
+					for (Integer qid : postings.get(term)) {
+						Document doc = documents.get(qid);
+						// Skip a question already scored through an earlier expansion or an earlier group
+						if (containsAny(doc, seenTerms) || !matchesAll(doc, group) || matchesAnyGroup(doc, expanded, g)) {
+							continue;
+						}
+						double score = score(doc, idf, avgLength);
+						if (best.size() < k) {
+							best.add(new SearchHit(qid, score));
+						} else if (score > best.peek().getScore()) {
+							best.poll();
+							best.add(new SearchHit(qid, score));
+						}
+					}
+					seenTerms.add(term);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		List<SearchHit> hits = new ArrayList<SearchHit>(best);
+		hits.sort(Comparator.comparingDouble(SearchHit::getScore).reversed()
+				.thenComparingInt(SearchHit::getQuestionId));
+		return hits;
+	}
+
+	// The term expansion of a group with the fewest postings, so the fewest candidates are checked
+	private Collection<String> rarest(List<Collection<String>> group) {
+		Collection<String> rarest = null;
+		long fewest = Long.MAX_VALUE;
+		for (Collection<String> terms : group) {
+			long n = 0;
+			for (String t : terms) {
+				n += postings.get(t).size();
+			}
+			if (n < fewest) {
+				fewest = n;
+				rarest = terms;
+			}
+		}
+		return rarest;
+	}
+
+	private static boolean containsAny(Document doc, Collection<String> terms) {
+		for (String t : terms) {
+			if (doc.total.containsKey(t)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matchesAll(Document doc, List<Collection<String>> group) {
+		for (Collection<String> terms : group) {
+			if (!containsAny(doc, terms)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matchesAnyGroup(Document doc, List<List<Collection<String>>> groups, int before) {
+		for (int g = 0; g < before; g++) {
+			if (matchesAll(doc, groups.get(g))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// BM25 over the whole thread, counting title occurrences TITLE_BOOST times
+	private double score(Document doc, Map<String, Double> idf, double avgLength) {
+		double norm = K1 * (1 - B + B * doc.length / avgLength);
+		double score = 0;
+		for (Map.Entry<String, Double> e : idf.entrySet()) {
+			Integer total = doc.total.get(e.getKey());
+			if (total == null) {
+				continue;
+			}
+			double tf = total + (TITLE_BOOST - 1) * doc.title.getOrDefault(e.getKey(), 0);
+			score += e.getValue() * tf * (K1 + 1) / (tf + norm);
+		}
+		return doc.resolved ? score * RESOLVED_BOOST : score;
+	}
+
+	// Index terms a query term stands for; a prefix term expands to at most MAX_PREFIX_EXPANSION terms
+	private Collection<String> expand(String term) {
+		if (!term.endsWith("*")) {
+			return postings.containsKey(term) ? Collections.singletonList(term) : Collections.<String>emptyList();
+		}
+		String prefix = term.substring(0, term.length() - 1);
+		List<String> terms = new ArrayList<String>();
+		for (String t : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+			if (terms.size() == MAX_PREFIX_EXPANSION) {
+				break;
+			}
+			terms.add(t);
+		}
+		return terms;
+	}
+
+	// Questions matching any OR group, where every term of a group must match
+	private Set<Integer> matches(List<List<String>> groups) {
+		Set<Integer> results = new HashSet<Integer>();
+		for (List<String> group : groups) {
+			Set<Integer> matches = null;
+			for (String term : group) {
+				Set<Integer> termMatches = lookup(term);
+				if (matches == null) {
+					matches = new HashSet<Integer>(termMatches);
+				} else {
+					matches.retainAll(termMatches);
+				}
+				if (matches.isEmpty()) {
+					break;
+				}
+			}
+			if (matches != null) {
+				results.addAll(matches);
+			}
+		}
+		return results;
+	}
+
+	// Split a query into OR groups of AND terms; prefix terms keep their trailing *
+	static List<List<String>> parse(String query) {
+		List<List<String>> groups = new ArrayList<List<String>>();
+		List<String> group = new ArrayList<String>();
+		for (String word : query.trim().split("\\s+")) {
+			if (word.equals("OR")) {
+				if (!group.isEmpty()) {
+					groups.add(group);
+				}
+				group = new ArrayList<String>();
+				continue;
+			}
+			List<String> terms = tokenize(word);
+			if (!terms.isEmpty() && word.endsWith("*")) {
+				terms.set(terms.size() - 1, terms.get(terms.size() - 1) + "*");
+			}
+			group.addAll(terms);
+		}
+		if (!group.isEmpty()) {
+			groups.add(group);
+		}
+		return groups;
+	}
+
+	// Test texts against a query without indexing them, with the same terms, AND/OR groups and
+	// prefix* matching as search(); for filtering a short list that is already in memory
+	public static Predicate<String> matcher(String query) {
+		List<List<String>> groups = parse(query);
+		return text -> {
+			Set<String> terms = new HashSet<String>(tokenize(text));
+			for (List<String> group : groups) {
+				boolean all = true;
+				for (String term : group) {
+					if (!contains(terms, term)) {
+						all = false;
+						break;
+					}
+				}
+				if (all) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+	private static boolean contains(Set<String> terms, String term) {
+		if (!term.endsWith("*")) {
+			return terms.contains(term);
+		}
+		String prefix = term.substring(0, term.length() - 1);
+		for (String t : terms) {
+			if (t.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Questions containing the term, or any term with the given prefix if it ends in *
+	private Set<Integer> lookup(String term) {
+		if (!term.endsWith("*")) {
+			Set<Integer> ids = postings.get(term);
+			return ids == null ? Collections.<Integer>emptySet() : ids;
+		}
+		String prefix = term.substring(0, term.length() - 1);
+		Set<Integer> ids = new HashSet<Integer>();
+		for (Set<Integer> matches : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+			ids.addAll(matches);
+		}
+		return ids;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			documents.clear();
+			postings.clear();
+			answerToQuestion.clear();
+			totalLength = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
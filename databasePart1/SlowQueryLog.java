@@ -0,0 +1,317 @@
+package databasePart1;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * The SlowQueryLog class logs every prepared statement that takes longer than a threshold,
+ * with its SQL, bound parameters, duration and row count, to a rotating set of log files.
+ * A query's time runs from its execution until its result set is closed, so it includes
+ * reading the rows.
+ *
+ * Each entry also shows H2's plan, so a full scan is easy to tell from an index lookup.
+ * The plan is captured in the background on a separate connection: plain SELECTs are re-run
+ * with EXPLAIN ANALYZE for actual row counts, while other statements, including SELECT ...
+ * FOR UPDATE, get a plain EXPLAIN so that they are neither applied twice nor wait for the
+ * row locks held by the transaction that ran them. If plans queue up faster than they can be
+ * captured, the extra entries are dropped and only counted, so a burst of slow statements
+ * never makes the threads that ran them wait on the log files.
+ */
+public class SlowQueryLog implements AutoCloseable {
+
+	// Default size of one log file and number of files kept
+	static final int DEFAULT_FILE_LIMIT_BYTES = 10 * 1024 * 1024;
+	static final int DEFAULT_FILE_COUNT = 5;
+	// Slow statements waiting for their plan to be captured
+	static final int EXPLAIN_QUEUE_CAPACITY = 100;
+
+	private static final Object NULL = new Object();
+	// Statements that are safe to re-run with EXPLAIN ANALYZE: a SELECT that takes no row locks
+	private static final Pattern PLAIN_SELECT = Pattern.compile("(?is)\\s*SELECT\\b.*");
+	private static final Pattern FOR_UPDATE = Pattern.compile("(?i)\\bFOR\\s+UPDATE\\b");
+
+	private final String url;
+	private final String user;
+	private final String pass;
+	private final long thresholdNanos;
+	private final Logger logger;
+	private final FileHandler handler;
+	private final ThreadPoolExecutor explainer;
+	private final LongAdder slowStatements = new LongAdder();
+	private final LongAdder droppedStatements = new LongAdder();
+	private Connection sideConnection; // Only used by the explainer thread
+
+	public SlowQueryLog(String url, String user, String pass, long thresholdMillis, String filePattern) throws IOException {
+		this(url, user, pass, thresholdMillis, filePattern, DEFAULT_FILE_LIMIT_BYTES, DEFAULT_FILE_COUNT);
+	}
+
+	// filePattern follows java.util.logging.FileHandler, e.g. "%h/HW2-slow-queries.%g.log"
+	public SlowQueryLog(String url, String user, String pass, long thresholdMillis, String filePattern,
+			int fileLimitBytes, int fileCount) throws IOException {
+		this.url = url;
+		this.user = user;
+		this.pass = pass;
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.handler = new FileHandler(filePattern, fileLimitBytes, fileCount, true);
+		handler.setFormatter(new SimpleFormatter());
+		this.logger = Logger.getAnonymousLogger();
+		logger.setUseParentHandlers(false);
+		logger.addHandler(handler);
+		this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(EXPLAIN_QUEUE_CAPACITY), r -> {
+					Thread t = new Thread(r, "slow-query-explainer");
+					t.setDaemon(true);
+					return t;
+				}, (task, executor) -> droppedStatements.increment());
+	}
+
+	public long getSlowStatementCount() { return slowStatements.sum(); }
+	// Slow statements that were not logged because the explain queue was full
+	public long getDroppedStatementCount() { return droppedStatements.sum(); }
+
+	// Wrap a statement so that its executions are timed and its parameters remembered
+	PreparedStatement wrap(PreparedStatement statement, String sql) {
+		return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+				new Class<?>[] {PreparedStatement.class}, new StatementHandler(statement, sql));
+	}
+
+	private void finished(String sql, Map<Integer, Object> parameters, long nanos, long rows, int batchSize) {
+		if (nanos < thresholdNanos) {
+			return;
+		}
+		slowStatements.increment();
+		explainer.execute(new Entry(sql, new TreeMap<Integer, Object>(parameters), nanos, rows, batchSize));
+	}
+
+	// One slow statement; run on the explainer thread to capture its plan before logging it
+	private class Entry implements Runnable {
+		final String sql;
+		final Map<Integer, Object> parameters;
+		final long nanos;
+		final long rows;
+		final int batchSize;
+
+		Entry(String sql, Map<Integer, Object> parameters, long nanos, long rows, int batchSize) {
+			this.sql = sql;
+			this.parameters = parameters;
+			this.nanos = nanos;
+			this.rows = rows;
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public void run() {
+			String plan;
+			try {
+				plan = explain(sql, parameters);
+			} catch (SQLException e) {
+				plan = "(plan unavailable: " + e.getMessage() + ")";
+			}
+			log(plan);
+		}
+
+		void log(String plan) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("Slow statement: %.3f ms, %d rows", nanos / 1e6, rows));
+			if (batchSize > 0) {
+				sb.append(", batch of ").append(batchSize);
+			}
+			sb.append("\nSQL: ").append(sql);
+			sb.append("\nParameters: ");
+			if (batchSize > 0) {
+				sb.append("(last row) ");
+			}
+			sb.append(describe(parameters));
+			sb.append("\nPlan:\n").append(plan);
+			logger.log(Level.WARNING, sb.toString());
+		}
+	}
+
+	// Capture the plan of a statement with the same parameters on the side connection
+	private String explain(String sql, Map<Integer, Object> parameters) throws SQLException {
+		boolean analyze = PLAIN_SELECT.matcher(sql).matches() && !FOR_UPDATE.matcher(sql).find();
+		if (sideConnection == null || sideConnection.isClosed()) {
+			sideConnection = DriverManager.getConnection(url, user, pass);
+		}
+		try (PreparedStatement explain = sideConnection.prepareStatement((analyze ? "EXPLAIN ANALYZE " : "EXPLAIN ") + sql)) {
+			for (Map.Entry<Integer, Object> p : parameters.entrySet()) {
+				Object value = p.getValue();
+				if (value instanceof Array) {
+					value = ((Array) value).getArray();
+				}
+				explain.setObject(p.getKey(), value == NULL ? null : value);
+			}
+			StringBuilder plan = new StringBuilder();
+			try (ResultSet rs = explain.executeQuery()) {
+				while (rs.next()) {
+					plan.append(rs.getString(1)).append('\n');
+				}
+			}
+			return plan.toString();
+		}
+	}
+
+	private static String describe(Map<Integer, Object> parameters) {
+		StringBuilder sb = new StringBuilder("[");
+		for (Map.Entry<Integer, Object> p : parameters.entrySet()) {
+			if (sb.length() > 1) {
+				sb.append(", ");
+			}
+			Object value = p.getValue();
+			sb.append(p.getKey()).append('=');
+			if (value == NULL) {
+				sb.append("NULL");
+			} else if (value instanceof String) {
+				sb.append('\'').append(value).append('\'');
+			} else if (value instanceof Array) {
+				try {
+					sb.append(java.util.Arrays.deepToString((Object[]) ((Array) value).getArray()));
+				} catch (SQLException | ClassCastException e) {
+					sb.append(value);
+				}
+			} else {
+				sb.append(value);
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	// Times the executions of one statement and records the parameters bound to it
+	private class StatementHandler implements InvocationHandler {
+		private final PreparedStatement target;
+		private final String sql;
+		private final Map<Integer, Object> parameters = new TreeMap<Integer, Object>();
+		private int batchSize = 0;
+
+		StatementHandler(PreparedStatement target, String sql) {
+			this.target = target;
+			this.sql = sql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+				parameters.put((Integer) args[0], name.equals("setNull") || args[1] == null ? NULL : args[1]);
+			} else if (name.equals("clearParameters")) {
+				parameters.clear();
+			} else if (name.equals("addBatch") && args == null) {
+				batchSize++;
+			} else if (name.equals("clearBatch")) {
+				batchSize = 0;
+			}
+			if (name.equals("executeQuery") && args == null) {
+				long start = System.nanoTime();
+				ResultSet rs = (ResultSet) call(method, args);
+				return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+						new ResultSetHandler(rs, start, parameters));
+			}
+			if (name.startsWith("execute") && args == null) {
+				long start = System.nanoTime();
+				Object result = call(method, args);
+				long rows = 0;
+				if (result instanceof Integer || result instanceof Long) {
+					rows = ((Number) result).longValue();
+				} else if (result instanceof int[]) {
+					for (int n : (int[]) result) {
+						rows += Math.max(0, n);
+					}
+				} else if (result instanceof long[]) {
+					for (long n : (long[]) result) {
+						rows += Math.max(0, n);
+					}
+				}
+				int batch = name.endsWith("Batch") ? batchSize : 0;
+				if (name.endsWith("Batch")) {
+					batchSize = 0;
+				}
+				finished(sql, parameters, System.nanoTime() - start, rows, batch);
+				return result;
+			}
+			return call(method, args);
+		}
+
+		private Object call(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		// Counts the rows read from a query's result set and reports the query when it is closed
+		private class ResultSetHandler implements InvocationHandler {
+			private final ResultSet target;
+			private final long start;
+			private final Map<Integer, Object> queryParameters;
+			private long rows = 0;
+			private boolean reported = false;
+
+			ResultSetHandler(ResultSet target, long start, Map<Integer, Object> parameters) {
+				this.target = target;
+				this.start = start;
+				this.queryParameters = new TreeMap<Integer, Object>(parameters);
+			}
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				Object result;
+				try {
+					result = method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+				if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+					rows++;
+				} else if (method.getName().equals("close") && !reported) {
+					reported = true;
+					finished(sql, queryParameters, System.nanoTime() - start, rows, 0);
+				}
+				return result;
+			}
+		}
+	}
+
+	// Stop capturing plans and close the side connection and the log files
+	@Override
+	public void close() {
+		explainer.shutdown();
+		try {
+			explainer.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long dropped = droppedStatements.sum();
+		if (dropped > 0) {
+			logger.log(Level.WARNING, dropped + " slow statements were not logged because the explain queue was full");
+		}
+		try {
+			if (sideConnection != null) {
+				sideConnection.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		handler.close();
+	}
+}
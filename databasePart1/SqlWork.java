@@ -0,0 +1,12 @@
+package databasePart1;
+
+import java.sql.SQLException;
+
+/**
+ * The SqlWork interface is one database mutation, run on a pooled connection inside a
+ * transaction that the caller commits. It may run on the caller's thread or, in
+ * write-behind mode, on the writer thread together with other queued mutations.
+ */
+public interface SqlWork<T> {
+	T execute(PooledConnection conn) throws SQLException;
+}
@@ -0,0 +1,111 @@
+package databasePart1;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The StatementCache class keeps the most recently used prepared statements of one
+ * pooled connection, keyed by their SQL text, so that H2 does not re-parse and re-plan
+ * the same fixed SQL on every menu action. The least recently used statement is dropped
+ * once the cache is full. The borrower may still be holding it, since an operation can
+ * prepare several statements before executing the first, so it is only closed once the
+ * connection is returned to the pool. Hit and miss counters are shared by every connection
+ * in a pool.
+ */
+public class StatementCache {
+
+	/**
+	 * Hit, miss and eviction counters shared by all statement caches of a pool.
+	 * Every miss prepares a statement, so misses minus closed is the number still open.
+	 */
+	public static class Stats {
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+		private final LongAdder closed = new LongAdder();
+
+		public long getHits() { return hits.sum(); }
+		public long getMisses() { return misses.sum(); }
+		public long getEvictions() { return evictions.sum(); }
+		public long getClosed() { return closed.sum(); }
+		public double getHitRate() {
+			long h = getHits(), total = h + getMisses();
+			return total == 0 ? 0.0 : (double) h / total;
+		}
+	}
+
+	private static final String RETURN_KEYS_SUFFIX = "\u0000RETURN_GENERATED_KEYS";
+
+	private final int capacity;
+	private final Stats stats;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	private final ArrayList<PreparedStatement> evicted = new ArrayList<PreparedStatement>();
+
+	StatementCache(int capacity, Stats stats) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Statement cache capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		this.stats = stats;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+	}
+
+	// Return the cached statement for this SQL, preparing it on a miss
+	synchronized PreparedStatement get(Connection connection, String sql, boolean returnKeys) throws SQLException {
+		// A statement that returns generated keys is prepared differently, so it gets its own entry
+		String key = returnKeys ? sql + RETURN_KEYS_SUFFIX : sql;
+		PreparedStatement pstmt = statements.get(key);
+		if (pstmt != null && !pstmt.isClosed()) {
+			stats.hits.increment();
+			return pstmt;
+		}
+		stats.misses.increment();
+		pstmt = returnKeys ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+				: connection.prepareStatement(sql);
+		statements.put(key, pstmt);
+		if (statements.size() > capacity) {
+			evictEldest();
+		}
+		return pstmt;
+	}
+
+	private void evictEldest() {
+		Iterator<Map.Entry<String, PreparedStatement>> eldest = statements.entrySet().iterator();
+		PreparedStatement pstmt = eldest.next().getValue();
+		eldest.remove();
+		stats.evictions.increment();
+		evicted.add(pstmt);
+	}
+	
+	// Close the statements evicted during the current borrow; called when the connection is returned
+	synchronized void closeEvicted() {
+		for (PreparedStatement pstmt : evicted) {
+			close(pstmt);
+		}
+		evicted.clear();
+	}
+
+	synchronized int size() { return statements.size(); }
+
+	// Close every cached statement; called before the physical connection is closed
+	synchronized void closeAll() {
+		closeEvicted();
+		for (PreparedStatement pstmt : statements.values()) {
+			close(pstmt);
+		}
+		statements.clear();
+	}
+
+	private void close(PreparedStatement pstmt) {
+		stats.closed.increment();
+		try {
+			pstmt.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
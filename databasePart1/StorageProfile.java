@@ -0,0 +1,137 @@
+package databasePart1;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The StorageProfile class describes where a DatabaseHelper keeps its data and how H2 is
+ * tuned for it, and builds the matching JDBC URL.
+ *
+ * An in-memory profile is fast and leaves nothing behind. memory() gives every caller its own
+ * uniquely named database, which lives until the DatabaseHelper using it is closed, so tests
+ * and benchmarks can run side by side; a named one lives as long as the JVM. A file profile
+ * keeps the data on disk and can tune the page cache, how long commits may wait before being
+ * written (trading the last moments of durability for latency) and compression of the pages.
+ *
+ * fromSystemProperties() picks the profile at start-up, so that the storage can be changed
+ * without code changes:
+ *   -DdbStorage=mem | mem:NAME | file:PATH | jdbc:URL   (default file:~/HW2Database)
+ *   -DdbCacheSizeKb=N  -DdbWriteDelayMillis=N  -DdbCompress=true
+ */
+public class StorageProfile {
+
+	static final String DEFAULT_FILE = "~/HW2Database";
+
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final String url;
+	private final boolean inMemory;
+	private final boolean isolated;
+	private final int cacheSizeKb;      // 0 keeps H2's default
+	private final int writeDelayMillis; // -1 keeps H2's default
+	private final boolean compress;
+
+	private StorageProfile(String url, boolean inMemory, boolean isolated, int cacheSizeKb, int writeDelayMillis,
+			boolean compress) {
+		this.url = url;
+		this.inMemory = inMemory;
+		this.isolated = isolated;
+		this.cacheSizeKb = cacheSizeKb;
+		this.writeDelayMillis = writeDelayMillis;
+		this.compress = compress;
+	}
+
+	// A private in-memory database with a name no other profile uses
+	public static StorageProfile memory() {
+		return new StorageProfile("jdbc:h2:mem:hw2-" + instances.incrementAndGet() + ";DB_CLOSE_DELAY=-1",
+				true, true, 0, -1, false);
+	}
+
+	// A named in-memory database, shared by every profile in this JVM with the same name
+	public static StorageProfile memory(String name) {
+		return new StorageProfile("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", true, false, 0, -1, false);
+	}
+
+	// A database stored in the given file (without H2's .mv.db suffix); "~" is the home directory
+	public static StorageProfile file(String path) {
+		return new StorageProfile("jdbc:h2:" + path, false, false, 0, -1, false);
+	}
+
+	// Any other H2 URL, used as given
+	public static StorageProfile url(String url) {
+		return new StorageProfile(url, url.startsWith("jdbc:h2:mem:"), false, 0, -1, false);
+	}
+
+	// Page cache size in KB
+	public StorageProfile withCacheSizeKb(int cacheSizeKb) {
+		if (cacheSizeKb < 1) {
+			throw new IllegalArgumentException("Cache size must be at least 1 KB");
+		}
+		return new StorageProfile(url, inMemory, isolated, cacheSizeKb, writeDelayMillis, compress);
+	}
+
+	// How long a commit may stay unwritten; 0 writes every commit before it returns
+	public StorageProfile withWriteDelayMillis(int writeDelayMillis) {
+		if (writeDelayMillis < 0) {
+			throw new IllegalArgumentException("Write delay must not be negative");
+		}
+		return new StorageProfile(url, inMemory, isolated, cacheSizeKb, writeDelayMillis, compress);
+	}
+
+	// Compress the pages written to the file
+	public StorageProfile withCompression(boolean compress) {
+		return new StorageProfile(url, inMemory, isolated, cacheSizeKb, writeDelayMillis, compress);
+	}
+
+	// Parse mem, mem:NAME, file:PATH or a jdbc: URL
+	public static StorageProfile parse(String spec) {
+		if (spec.equals("mem")) {
+			return memory();
+		} else if (spec.startsWith("mem:")) {
+			return memory(spec.substring(4));
+		} else if (spec.startsWith("file:")) {
+			return file(spec.substring(5));
+		} else if (spec.startsWith("jdbc:")) {
+			return url(spec);
+		}
+		throw new IllegalArgumentException("Unknown storage " + spec + "; use mem, mem:NAME, file:PATH or a jdbc: URL");
+	}
+
+	// The profile chosen by the db* system properties, or the default database file
+	public static StorageProfile fromSystemProperties() {
+		StorageProfile profile = parse(System.getProperty("dbStorage", "file:" + DEFAULT_FILE));
+		Integer cacheSizeKb = Integer.getInteger("dbCacheSizeKb");
+		if (cacheSizeKb != null) {
+			profile = profile.withCacheSizeKb(cacheSizeKb);
+		}
+		Integer writeDelayMillis = Integer.getInteger("dbWriteDelayMillis");
+		if (writeDelayMillis != null) {
+			profile = profile.withWriteDelayMillis(writeDelayMillis);
+		}
+		if (Boolean.getBoolean("dbCompress")) {
+			profile = profile.withCompression(true);
+		}
+		return profile;
+	}
+
+	// The JDBC URL with the tuning settings appended
+	public String getUrl() {
+		StringBuilder sb = new StringBuilder(url);
+		if (cacheSizeKb > 0) {
+			sb.append(";CACHE_SIZE=").append(cacheSizeKb);
+		}
+		if (writeDelayMillis >= 0 && !inMemory) {
+			sb.append(";WRITE_DELAY=").append(writeDelayMillis);
+		}
+		if (compress && !inMemory) {
+			sb.append(";COMPRESS=TRUE");
+		}
+		return sb.toString();
+	}
+
+	public boolean isInMemory() { return inMemory; }
+	// Whether the database belongs to this profile alone, so it can be dropped when closed
+	public boolean isIsolated() { return isolated; }
+
+	@Override
+	public String toString() { return getUrl(); }
+}
@@ -0,0 +1,42 @@
+package databasePart1;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The TaskExecutors class creates thread-per-task executors for blocking database work.
+ * On Java 21 and later each task runs on its own virtual thread. Older runtimes fall back
+ * to a cached pool of daemon platform threads, so the code still builds and runs there.
+ */
+public class TaskExecutors {
+
+	private TaskExecutors() {
+	}
+
+	// An executor that starts one (virtual, when available) thread per submitted task
+	public static ExecutorService newPerTaskExecutor(String namePrefix) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger count = new AtomicInteger();
+			ThreadFactory factory = r -> {
+				Thread t = new Thread(r, namePrefix + "-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			};
+			return Executors.newCachedThreadPool(factory);
+		}
+	}
+
+	// Whether newPerTaskExecutor() uses virtual threads on this runtime
+	public static boolean hasVirtualThreads() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
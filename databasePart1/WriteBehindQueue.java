@@ -0,0 +1,204 @@
+package databasePart1;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * The WriteBehindQueue class lets callers enqueue database mutations instead of waiting
+ * for their own commit. A single writer thread drains the bounded queue and runs the
+ * queued mutations in group-committed transactions of up to maxBatch writes, lingering up
+ * to flushIntervalMillis for more writes to join a group. When the queue is full, callers
+ * wait up to offerTimeoutMillis for space before their write is rejected.
+ *
+ * Every write returns a future that completes once its transaction has committed.
+ * If a group fails, it is rolled back and its writes are retried one by one, so a single
+ * bad write only fails its own future.
+ */
+public class WriteBehindQueue {
+
+	// A queued mutation with the side effects to run after it commits
+	private static class PendingWrite<T> {
+		final SqlWork<T> work;
+		final Consumer<T> afterCommit;
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		T result;
+
+		PendingWrite(SqlWork<T> work, Consumer<T> afterCommit) {
+			this.work = work;
+			this.afterCommit = afterCommit;
+		}
+
+		void execute(PooledConnection conn) throws SQLException {
+			result = work.execute(conn);
+		}
+
+		void complete() {
+			try {
+				if (afterCommit != null) {
+					afterCommit.accept(result);
+				}
+				future.complete(result);
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	// Queued by close() to stop the writer after everything before it
+	private static final PendingWrite<Void> STOP = new PendingWrite<Void>(conn -> null, null);
+
+	private final ConnectionPool pool;
+	private final BlockingQueue<PendingWrite<?>> queue;
+	private final int maxBatch;
+	private final long flushIntervalMillis;
+	private final long offerTimeoutMillis;
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	public WriteBehindQueue(ConnectionPool pool, int capacity, int maxBatch, long flushIntervalMillis, long offerTimeoutMillis) {
+		this.pool = pool;
+		this.queue = new ArrayBlockingQueue<PendingWrite<?>>(capacity);
+		this.maxBatch = maxBatch;
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.offerTimeoutMillis = offerTimeoutMillis;
+		this.writer = new Thread(this::drain, "write-behind-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	// Enqueue a mutation, waiting for space if the queue is full
+	public <T> CompletableFuture<T> submit(SqlWork<T> work, Consumer<T> afterCommit) {
+		PendingWrite<T> write = new PendingWrite<T>(work, afterCommit);
+		if (closed) {
+			write.future.completeExceptionally(new SQLException("Write-behind queue is closed"));
+			return write.future;
+		}
+		try {
+			if (!queue.offer(write, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				write.future.completeExceptionally(new SQLException("Write-behind queue is full"));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			write.future.completeExceptionally(new SQLException("Interrupted while queueing a write", e));
+		}
+		return write.future;
+	}
+
+	public int getQueuedCount() { return queue.size(); }
+
+	// Wait until every write queued before this call has committed or failed
+	public void flush() throws SQLException {
+		CompletableFuture<Void> barrier = submit(conn -> null, null);
+		try {
+			barrier.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while flushing queued writes", e);
+		} catch (ExecutionException e) {
+			throw new SQLException("Failed to flush queued writes", e.getCause());
+		}
+	}
+
+	// Flush the queue, then stop accepting writes and stop the writer thread
+	public void close() throws SQLException {
+		try {
+			flush();
+		} finally {
+			closed = true;
+			boolean interrupted = false;
+			while (true) {
+				try {
+					queue.put(STOP);
+					writer.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			// Anything enqueued while closing can no longer be written
+			PendingWrite<?> write;
+			while ((write = queue.poll()) != null) {
+				write.future.completeExceptionally(new SQLException("Write-behind queue is closed"));
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// Writer loop: collect a group of writes and commit it in one transaction
+	private void drain() {
+		List<PendingWrite<?>> group = new ArrayList<PendingWrite<?>>(maxBatch);
+		boolean stopping = false;
+		while (!stopping) {
+			try {
+				group.add(queue.take());
+				queue.drainTo(group, maxBatch - group.size());
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+				while (group.size() < maxBatch && !group.contains(STOP)) {
+					long remaining = deadline - System.nanoTime();
+					PendingWrite<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+					if (next == null) {
+						break;
+					}
+					group.add(next);
+					queue.drainTo(group, maxBatch - group.size());
+				}
+			} catch (InterruptedException e) {
+				// Only close() stops the writer, by queueing STOP
+			}
+			stopping = group.remove(STOP);
+			commit(group);
+			group.clear();
+		}
+	}
+
+	private void commit(List<PendingWrite<?>> group) {
+		if (group.isEmpty()) {
+			return;
+		}
+		try (PooledConnection conn = pool.borrow()) {
+			Connection connection = conn.getConnection();
+			try {
+				connection.setAutoCommit(false);
+				for (PendingWrite<?> write : group) {
+					write.execute(conn);
+				}
+				connection.commit();
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				retryIndividually(conn, group);
+				return;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			for (PendingWrite<?> write : group) {
+				write.future.completeExceptionally(e);
+			}
+			return;
+		}
+		for (PendingWrite<?> write : group) {
+			write.complete();
+		}
+	}
+
+	// Run each write of a failed group in its own transaction to isolate the failure
+	private void retryIndividually(PooledConnection conn, List<PendingWrite<?>> group) {
+		for (PendingWrite<?> write : group) {
+			try {
+				conn.inTransaction(c -> {
+					write.execute(c);
+					return null;
+				});
+				write.complete();
+			} catch (SQLException | RuntimeException e) {
+				write.future.completeExceptionally(e);
+			}
+		}
+	}
+}